@@ -25,6 +25,78 @@ public class Main
                 .option("b").desc("path to Boogie executable").hasArg(true).argName("path").build();
         options.addOption(boogiePathOption);
 
+        Option failFastOption = Option.builder()
+                .longOpt("fail-fast").desc("stop all proof tasks as soon as one fails").build();
+        options.addOption(failFastOption);
+
+        Option keepGoingOption = Option.builder()
+                .longOpt("keep-going").desc("check as much as possible and report all errors at the end").build();
+        options.addOption(keepGoingOption);
+
+        Option workersOption = Option.builder()
+                .option("j").longOpt("workers").desc("number of proof tasks to run in parallel (default: number of processors)").hasArg(true).argName("n").build();
+        options.addOption(workersOption);
+
+        Option memoryBudgetOption = Option.builder()
+                .longOpt("memory-budget").desc("total memory that running proof tasks may use").hasArg(true).argName("MB").build();
+        options.addOption(memoryBudgetOption);
+
+        Option timeoutOption = Option.builder()
+                .longOpt("timeout").desc("time limit for the first attempt at each proof task").hasArg(true).argName("seconds").build();
+        options.addOption(timeoutOption);
+
+        Option rlimitOption = Option.builder()
+                .longOpt("rlimit").desc("solver resource limit for the first attempt at each proof task").hasArg(true).argName("n").build();
+        options.addOption(rlimitOption);
+
+        Option maxAttemptsOption = Option.builder()
+                .longOpt("max-attempts").desc("attempts at a proof task that times out, doubling the limits and changing the random seed each time (default: " + Settings.maxAttempts + ")").hasArg(true).argName("n").build();
+        options.addOption(maxAttemptsOption);
+
+        Option solverMemoryOption = Option.builder()
+                .longOpt("solver-memory").desc("limit the memory of each Boogie process and the solvers it starts to n MB, using systemd-run, or else limit the address space of each process using prlimit").hasArg(true).argName("n").build();
+        options.addOption(solverMemoryOption);
+
+        Option solverCpuOption = Option.builder()
+                .longOpt("solver-cpu").desc("limit the CPU time of each Boogie and solver process to n seconds, using prlimit").hasArg(true).argName("n").build();
+        options.addOption(solverCpuOption);
+
+        Option batchSizeOption = Option.builder()
+                .longOpt("batch-size").desc("check up to n pending proof tasks that share declarations in one Boogie process (default: " + Settings.batchSize + ")").hasArg(true).argName("n").build();
+        options.addOption(batchSizeOption);
+
+        Option scratchDirOption = Option.builder()
+                .longOpt("scratch-dir").desc("directory for the Boogie programs of proof tasks (default: /dev/shm or the system temporary directory)").hasArg(true).argName("dir").build();
+        options.addOption(scratchDirOption);
+
+        Option portfolioOption = Option.builder()
+                .longOpt("portfolio").desc("race up to n solver configurations for each proof task on idle workers, and accept the first that succeeds (default: " + Settings.portfolioSize + ")").hasArg(true).argName("n").build();
+        options.addOption(portfolioOption);
+
+        Option tailCoresOption = Option.builder()
+                .longOpt("tail-cores").desc("when workers are idle at the end of a run, check a running proof task again with up to n solver cores (default: " + Settings.tailCores + ")").hasArg(true).argName("n").build();
+        options.addOption(tailCoresOption);
+
+        Option metricsOption = Option.builder()
+                .longOpt("metrics").desc("write timing and cache metrics of all proof tasks to a JSON file, or to a CSV file if the name ends with .csv").hasArg(true).argName("file").build();
+        options.addOption(metricsOption);
+
+        Option splitGoalsOption = Option.builder()
+                .longOpt("split-goals").desc("check each postcondition and each top-level conjunct of an invariant as a separate proof task").build();
+        options.addOption(splitGoalsOption);
+
+        Option pruneOption = Option.builder()
+                .longOpt("prune").desc("remove declarations that proof obligations don't depend on from Boogie programs: none, conservative, or aggressive, which also removes procedures that the goal doesn't call and axioms that are only related to the goal by common symbols (default: " + Settings.prune.name().toLowerCase() + ")").hasArg(true).argName("mode").build();
+        options.addOption(pruneOption);
+
+        Option sharedCacheOption = Option.builder()
+                .longOpt("shared-cache").desc("also look up and record verified programs in a cache directory, or at an HTTP URL, that is shared with other checkers").hasArg(true).argName("dir|url").build();
+        options.addOption(sharedCacheOption);
+
+        Option trustFailuresOption = Option.builder()
+                .longOpt("trust-failures").desc("report proof tasks that failed in an earlier run as failed without checking them again. Without this option, they are checked after the other tasks.").build();
+        options.addOption(trustFailuresOption);
+
         try
         {
             CommandLineParser cliParser = new DefaultParser();
@@ -33,6 +105,63 @@ public class Main
             if (cmd.hasOption(boogiePathOption)) {
                 Settings.boogiePath = cmd.getOptionValue(boogiePathOption);
             }
+            Settings.failFast = cmd.hasOption(failFastOption);
+            Settings.keepGoing = cmd.hasOption(keepGoingOption);
+            if (Settings.failFast && Settings.keepGoing) {
+                printUsageAndExit(options);
+            }
+            if (cmd.hasOption(workersOption)) {
+                Settings.numWorkers = Integer.parseInt(cmd.getOptionValue(workersOption));
+            }
+            if (cmd.hasOption(memoryBudgetOption)) {
+                Settings.memoryBudget = Long.parseLong(cmd.getOptionValue(memoryBudgetOption));
+            }
+            if (cmd.hasOption(timeoutOption)) {
+                Settings.taskTimeout = Long.parseLong(cmd.getOptionValue(timeoutOption));
+            }
+            if (cmd.hasOption(rlimitOption)) {
+                Settings.solverResourceLimit = Long.parseLong(cmd.getOptionValue(rlimitOption));
+            }
+            if (cmd.hasOption(maxAttemptsOption)) {
+                Settings.maxAttempts = Integer.parseInt(cmd.getOptionValue(maxAttemptsOption));
+            }
+            if (cmd.hasOption(solverMemoryOption)) {
+                Settings.solverMemoryLimit = Long.parseLong(cmd.getOptionValue(solverMemoryOption));
+            }
+            if (cmd.hasOption(solverCpuOption)) {
+                Settings.solverCpuLimit = Long.parseLong(cmd.getOptionValue(solverCpuOption));
+            }
+            if (cmd.hasOption(batchSizeOption)) {
+                Settings.batchSize = Integer.parseInt(cmd.getOptionValue(batchSizeOption));
+            }
+            if (cmd.hasOption(scratchDirOption)) {
+                Settings.scratchDir = cmd.getOptionValue(scratchDirOption);
+            }
+            if (cmd.hasOption(portfolioOption)) {
+                Settings.portfolioSize = Integer.parseInt(cmd.getOptionValue(portfolioOption));
+            }
+            if (cmd.hasOption(tailCoresOption)) {
+                Settings.tailCores = Integer.parseInt(cmd.getOptionValue(tailCoresOption));
+            }
+            if (cmd.hasOption(metricsOption)) {
+                Settings.metricsFile = cmd.getOptionValue(metricsOption);
+            }
+            Settings.splitGoals = cmd.hasOption(splitGoalsOption);
+            if (cmd.hasOption(pruneOption)) {
+                Settings.prune = null;
+                for(Settings.PruneMode curMode : Settings.PruneMode.values()) {
+                    if (curMode.name().equalsIgnoreCase(cmd.getOptionValue(pruneOption))) {
+                        Settings.prune = curMode;
+                    }
+                }
+                if (Settings.prune == null) {
+                    printUsageAndExit(options);
+                }
+            }
+            if (cmd.hasOption(sharedCacheOption)) {
+                Settings.sharedCache = cmd.getOptionValue(sharedCacheOption);
+            }
+            Settings.trustFailures = cmd.hasOption(trustFailuresOption);
 
             if (cmd.getArgs().length != 1) {
                 printUsageAndExit(options);
@@ -55,7 +184,7 @@ public class Main
 
 
         }
-        catch (ParseException e) {
+        catch (ParseException | NumberFormatException e) {
             // command line argument parsing exception
             printUsageAndExit(options);
         }
@@ -6,5 +6,45 @@
 package com.amazon.quivela;
 
 public class Settings {
+
+    public enum PruneMode { NONE, CONSERVATIVE, AGGRESSIVE }
+
     public static String boogiePath = "boogie";
+    public static boolean failFast = false;
+    public static boolean keepGoing = false;
+    // number of proof workers, or 0 to use one worker per processor
+    public static int numWorkers = 0;
+    // total memory in MB that running proof tasks may use, or 0 for no limit
+    public static long memoryBudget = 0;
+    // time limit in seconds for the first attempt at a proof task, or 0 for no limit
+    public static long taskTimeout = 0;
+    // solver resource limit for the first attempt at a proof task, or 0 for no limit
+    public static long solverResourceLimit = 0;
+    // number of attempts at a proof task that times out, with limits that grow on each attempt
+    public static int maxAttempts = 3;
+    // memory limit in MB for each Boogie process and its solvers, which is the same on every attempt, or 0 for no limit
+    public static long solverMemoryLimit = 0;
+    // CPU time limit in seconds for each Boogie and solver process, which is the same on every attempt, or 0 for no limit
+    public static long solverCpuLimit = 0;
+    // maximum number of compatible proof tasks that are checked in one Boogie process, or 1 to disable batching
+    public static int batchSize = 1;
+    // directory for the Boogie programs of proof tasks, or null to use /dev/shm or the system temporary directory
+    public static String scratchDir = null;
+    // number of solver configurations that are raced for each proof task on otherwise idle workers, or 1 to disable
+    public static int portfolioSize = 1;
+    // maximum number of solver cores for a proof task that is still running when other workers have nothing to do,
+    // or 1 to disable
+    public static int tailCores = 1;
+    // file that timing and cache metrics of all proof tasks are written to, as CSV if it ends with .csv and as JSON
+    // otherwise, or null to not write metrics
+    public static String metricsFile = null;
+    // check each postcondition and each top-level conjunct of an invariant as a separate proof task
+    public static boolean splitGoals = false;
+    // which declarations are removed from a Boogie program when its proof obligations don't depend on them
+    public static PruneMode prune = PruneMode.CONSERVATIVE;
+    // directory or HTTP URL of a cache of verified programs that is shared with other checkers, or null to only use the
+    // cache file in the current directory
+    public static String sharedCache = null;
+    // report proof tasks whose programs failed in an earlier run as failed, without checking them again
+    public static boolean trustFailures = false;
 }
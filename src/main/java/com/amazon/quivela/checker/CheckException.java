@@ -8,11 +8,21 @@ package com.amazon.quivela.checker;
 import com.amazon.quivela.parser.node.Token;
 
 import java.io.File;
+import java.util.Optional;
 
 public class CheckException extends Exception {
 
+    private final File file;
+    private final int line;
+    private final int pos;
+    private final String description;
+
     public CheckException(File f, int line, int pos, String msg) {
         super("error at " + f.getAbsolutePath() + "(" + line + "," + pos + "):\n"+ msg);
+        this.file = f;
+        this.line = line;
+        this.pos = pos;
+        this.description = msg;
     }
 
     public CheckException(File f, Token tok, String msg) {
@@ -21,5 +31,32 @@ public class CheckException extends Exception {
 
     public CheckException(Exception causedBy) {
         super(causedBy);
+        this.file = null;
+        this.line = 0;
+        this.pos = 0;
+        this.description = getMessage();
+    }
+
+    public CheckException(String msg) {
+        super(msg);
+        this.file = null;
+        this.line = 0;
+        this.pos = 0;
+        this.description = msg;
+    }
+
+    // source position of the error, if known
+    public Optional<File> getFile() {
+        return Optional.ofNullable(file);
+    }
+    public int getLine() {
+        return line;
+    }
+    public int getPos() {
+        return pos;
+    }
+    // the message without the source position
+    public String getDescription() {
+        return description;
     }
 }
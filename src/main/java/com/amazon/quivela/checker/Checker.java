@@ -5,6 +5,7 @@
 
 package com.amazon.quivela.checker;
 
+import com.amazon.quivela.Settings;
 import com.amazon.quivela.checker.execution.ProofTaskQueue;
 import com.amazon.quivela.checker.tactic.*;
 import com.amazon.quivela.checker.tactic.boogie.BoogieFunctions;
@@ -46,6 +47,85 @@ public class Checker extends DepthFirstAdapter {
 
     public void checkTasks() throws CheckException {
         taskQueue.checkTasks();
+
+        errors.addAll(taskQueue.getFailures());
+        if (!errors.isEmpty()) {
+            reportErrors();
+            throw new CheckException("Check failed with " + errors.size() + " error(s).");
+        }
+    }
+
+    private void reportErrors() {
+        errors.sort(Comparator.comparing((CheckException e) -> e.getFile().map(File::getAbsolutePath).orElse(""))
+                .thenComparingInt(CheckException::getLine)
+                .thenComparingInt(CheckException::getPos));
+
+        System.err.println("Check failed with " + errors.size() + " error(s):");
+        for(CheckException curError : errors) {
+            System.err.println();
+            System.err.println(curError.getMessage());
+        }
+        System.err.println();
+    }
+
+    // In keep-going mode, an error aborts the definition that is being checked, and checking resumes with the next definition.
+    private static class DefinitionAbortedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public DefinitionAbortedException(CheckException cause) {
+            super(cause);
+        }
+    }
+
+    private final List<CheckException> errors = new ArrayList();
+
+    @Override
+    public void caseADevelopment(ADevelopment node) {
+        inADevelopment(node);
+        for(PDefinition curDef : new ArrayList<PDefinition>(node.getDefinition())) {
+            if (Settings.keepGoing) {
+                checkDefinitionAndContinue(curDef);
+            } else {
+                curDef.apply(this);
+            }
+        }
+        outADevelopment(node);
+    }
+
+    private void checkDefinitionAndContinue(PDefinition def) {
+        int symbolTableDepth = symbolTable.getDepth();
+        int defaultTypeDepth = defaultType.size();
+        int checkFileDepth = checkFile.size();
+        int pendingEquivsDepth = pendingEquivs.size();
+        int proofObligationsDepth = proofObligations.size();
+
+        try {
+            def.apply(this);
+        } catch (DefinitionAbortedException ex) {
+            errors.add((CheckException)ex.getCause());
+
+            // restore the state from before the definition
+            while (symbolTable.getDepth() > symbolTableDepth) {
+                symbolTable.popFrame();
+            }
+            while (defaultType.size() > defaultTypeDepth) {
+                defaultType.pop();
+            }
+            while (checkFile.size() > checkFileDepth) {
+                checkFile.pop();
+            }
+            while (proofObligations.size() > proofObligationsDepth) {
+                proofObligations.pop();
+            }
+            // a failed theorem is treated as admitted, so later proofs that use it can still be checked
+            IdentifiedEquiv failedTheorem = null;
+            while (pendingEquivs.size() > pendingEquivsDepth) {
+                failedTheorem = pendingEquivs.pop();
+            }
+            if (failedTheorem != null) {
+                theorems.putIfAbsent(failedTheorem.getId(), failedTheorem.getEquiv());
+            }
+        }
     }
 
     SymbolTable symbolTable = new SymbolTable();
@@ -369,6 +449,11 @@ public class Checker extends DepthFirstAdapter {
         return null;
     }
 
+    // The name of the theorem that is being proved, or null outside of a proof
+    private String getTheoremName() {
+        return pendingEquivs.isEmpty() ? null : pendingEquivs.peek().getId();
+    }
+
     @Override
     public void caseATheorem(ATheorem node) {
 
@@ -711,7 +796,7 @@ public class Checker extends DepthFirstAdapter {
             ids.addAll(idCol.getIds());
         }
 
-        Unfold unfold = new Unfold(checkFile.peek(), taskQueue, symbolTable, functions);
+        Unfold unfold = new Unfold(checkFile.peek(), getTheoremName(), taskQueue, symbolTable, functions);
         PExpr leftExpr = peekEquivObligation(node.getUnfold().getLine(), node.getUnfold().getPos()).leftExpr;
         try {
             unfold.transform(ids, leftExpr, node.getUnfold().getLine(), node.getUnfold().getPos());
@@ -780,7 +865,7 @@ public class Checker extends DepthFirstAdapter {
         ProofObligationEquiv topOb = peekEquivObligation(node.getAuto().getLine(), node.getAuto().getPos());
 
         try {
-            auto.check(checkFile.peek(), line, pos, topOb.leftExpr, topOb.rightExpr, "Checking auto");
+            auto.check(checkFile.peek(), line, pos, getTheoremName(), topOb.leftExpr, topOb.rightExpr, "Checking auto");
             topOb.leftExpr = (PExpr)topOb.rightExpr.clone();;
         } catch (CheckException ex) {
             handleCheckException(ex);
@@ -814,11 +899,11 @@ public class Checker extends DepthFirstAdapter {
 
             List<ABisimProp> props = null;
             if (node.getBisimProps() != null) {
-                BisimPropsCollector col = new BisimPropsCollector();
+                BisimPropsCollector col = new BisimPropsCollector(Settings.splitGoals);
                 node.getBisimProps().apply(col);
                 props = col.getProps();
             }
-            bisim.check(checkFile.peek(), node.getBisim().getLine(), node.getBisim().getPos(), leftNewOpt.get(), goalNewOpt.get(), props);
+            bisim.check(checkFile.peek(), node.getBisim().getLine(), node.getBisim().getPos(), getTheoremName(), leftNewOpt.get(), goalNewOpt.get(), props);
             topOb.leftExpr = (PExpr)goalExpr.clone();
         } catch (CheckException ex) {
             handleCheckException(ex);
@@ -979,10 +1064,17 @@ public class Checker extends DepthFirstAdapter {
     private void checkBounds(PBoundsExpr actual, PBoundsExpr required) {
 
         BoundsAuto auto = new BoundsAuto(taskQueue, symbolTable, functions, axioms, classes);
-        auto.check(checkFile.peek(), line, pos, actual, required);
+        try {
+            auto.check(checkFile.peek(), line, pos, getTheoremName(), actual, required);
+        } catch (CheckException ex) {
+            handleCheckException(ex);
+        }
     }
 
     private void handleCheckException(CheckException e) {
+        if (Settings.keepGoing) {
+            throw new DefinitionAbortedException(e);
+        }
         throw new RuntimeException(e);
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.event;
+
+import jdk.jfr.*;
+
+// Java Flight Recorder event for looking up the program of a proof task in the cache of verified programs
+@Name("com.amazon.quivela.CacheLookup")
+@Label("Cache Lookup")
+@Category({"Quivela", "Solving"})
+public class CacheLookupEvent extends Event {
+
+    @Label("Task")
+    private String task;
+
+    @Label("Tactic")
+    private String tactic;
+
+    @Label("Program Size")
+    @DataAmount
+    private long programBytes;
+
+    @Label("Hit")
+    private boolean hit;
+
+    public CacheLookupEvent(String task, String tactic, long programBytes) {
+        this.task = task;
+        this.tactic = tactic;
+        this.programBytes = programBytes;
+        begin();
+    }
+
+    public void end(boolean hit) {
+        this.hit = hit;
+        commit();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.event;
+
+import jdk.jfr.*;
+
+/*
+ Java Flight Recorder event for one attempt at checking the program of a proof task with Boogie. The event starts when
+ Boogie is started, and it is committed on the thread that observes that Boogie has exited.
+ */
+@Name("com.amazon.quivela.Solver")
+@Label("Solver Attempt")
+@Category({"Quivela", "Solving"})
+public class SolverEvent extends Event {
+
+    @Label("Task")
+    private String task;
+
+    @Label("Tactic")
+    private String tactic;
+
+    @Label("Program Size")
+    @DataAmount
+    private long programBytes;
+
+    @Label("Worker")
+    private int workerId;
+
+    @Label("Attempt")
+    private int attempt;
+
+    @Label("Configuration")
+    private String configuration;
+
+    @Label("Outcome")
+    private String outcome;
+
+    public SolverEvent(String task, String tactic, long programBytes, int workerId, int attempt, String configuration) {
+        this.task = task;
+        this.tactic = tactic;
+        this.programBytes = programBytes;
+        this.workerId = workerId;
+        this.attempt = attempt;
+        this.configuration = configuration;
+        begin();
+    }
+
+    public void end(String outcome) {
+        this.outcome = outcome;
+        commit();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.event;
+
+import jdk.jfr.*;
+
+import java.io.File;
+
+/*
+ Java Flight Recorder event for translating a tactic to Boogie. A tactic records one event for the declarations that
+ are shared by its proof tasks, and one for its goals. The event starts when it is created.
+ */
+@Name("com.amazon.quivela.Translation")
+@Label("Tactic Translation")
+@Category({"Quivela", "Translation"})
+public class TranslationEvent extends Event {
+
+    public static final String HEADER = "header";
+    public static final String GOAL = "goal";
+
+    @Label("Theorem")
+    private String theorem;
+
+    @Label("Tactic")
+    private String tactic;
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Location")
+    private String location;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    public TranslationEvent(String theorem, String tactic, String phase, File file, int line, int pos) {
+        this.theorem = theorem;
+        this.tactic = tactic;
+        this.phase = phase;
+        this.location = file.getName() + "(" + line + ":" + pos + ")";
+        begin();
+    }
+
+    // End the event, which produced the given number of bytes of Boogie
+    public void end(long bytes) {
+        this.bytes = bytes;
+        commit();
+    }
+}
@@ -0,0 +1,15 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.execution;
+
+// A proof task that idle workers can help while it is running
+public interface AssistedProofTask extends ProofTask {
+
+    // Create a task that may help this task complete sooner, or return null if no more help is useful. The helper may
+    // use up to the given number of cores, since that many workers are idle.
+    // The helper is run on idle workers, but it is not reported. It may be cancelled to free the workers for other tasks.
+    ProofTask createHelper(int cores);
+}
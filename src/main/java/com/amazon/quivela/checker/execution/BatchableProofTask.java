@@ -0,0 +1,18 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.execution;
+
+import java.util.List;
+
+// A proof task that can be checked together with other tasks in a single batch
+public interface BatchableProofTask extends ProofTask {
+
+    // Tasks with equal batch keys can be batched together. Returns null if the task cannot be batched.
+    Object getBatchKey();
+    // Create a task that checks all of the given tasks, which includes this task. The batch is responsible for
+    // starting or completing each of the tasks.
+    ProofTask createBatch(List<BatchableProofTask> tasks);
+}
@@ -0,0 +1,15 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.execution;
+
+// A proof task that checks the same thing as any other task with an equal identity
+public interface IdentifiedProofTask extends ProofTask {
+
+    // The identity of the task, or null if the task should not be deduplicated
+    Object getIdentity();
+    // Complete this task, which was never started, with the result of an identical task that has completed
+    void completeAsDuplicate(ProofTask original);
+}
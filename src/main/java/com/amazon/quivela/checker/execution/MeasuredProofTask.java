@@ -0,0 +1,13 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.execution;
+
+// A proof task that knows more about its cost than the queue can observe
+public interface MeasuredProofTask extends ProofTask {
+
+    // Add the measurements of the completed task to its metrics
+    void recordMetrics(ProofTaskMetrics metrics);
+}
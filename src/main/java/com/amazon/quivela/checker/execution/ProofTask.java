@@ -8,6 +8,7 @@ package com.amazon.quivela.checker.execution;
 import com.amazon.quivela.checker.CheckException;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface ProofTask {
 
@@ -17,9 +18,19 @@ public interface ProofTask {
         COMPLETE
     }
 
-    void start(int workerId);
+    // Start the task on the given worker. The returned future completes when the task is complete.
+    CompletableFuture<Void> start(int workerId);
+    // Stop the task if it is running. A cancelled task completes without an exception.
+    void cancel();
     Status getStatus();
     Optional<CheckException> getException();
     String getTaskMessage();
+    // Tasks with lower values are started first
     double getPriority();
+    // Estimated peak memory use of the task in bytes
+    long getMemoryEstimate();
+    // Number of cores the task uses. The task occupies one worker for each core.
+    default int getCores() {
+        return 1;
+    }
 }
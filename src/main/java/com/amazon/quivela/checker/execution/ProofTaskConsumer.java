@@ -5,6 +5,8 @@
 
 package com.amazon.quivela.checker.execution;
 
+import com.amazon.quivela.checker.CheckException;
+
 public interface ProofTaskConsumer {
-    void add(ProofTask task);
+    void add(ProofTask task) throws CheckException;
 }
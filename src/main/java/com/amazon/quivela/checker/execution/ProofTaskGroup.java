@@ -0,0 +1,127 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.execution;
+
+import com.amazon.quivela.Settings;
+import com.amazon.quivela.checker.CheckException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ A proof task that is split into parts. The group completes when all of its parts are complete, and it fails if any part
+ fails, with one error that lists the failed parts. ProofTaskQueue runs the parts as separate tasks and reports only the
+ group. Starting the group directly runs the parts one after another on the same worker.
+ */
+public class ProofTaskGroup implements ProofTask {
+
+    private final File file;
+    private final int line;
+    private final int pos;
+    private final List<ProofTask> parts;
+    private final String message;
+    private final String failMessage;
+    private int completedParts = 0;
+    private boolean reported = false;
+
+    public ProofTaskGroup(File file, int line, int pos, List<ProofTask> parts, String message, String failMessage) {
+        this.file = file;
+        this.line = line;
+        this.pos = pos;
+        this.parts = parts;
+        this.message = message;
+        this.failMessage = failMessage;
+    }
+
+    public List<ProofTask> getParts() {
+        return parts;
+    }
+
+    // Record that a part is complete, and return true if the group should be reported now. The group is reported once,
+    // when its last part is complete, or in fail-fast mode when a part fails.
+    synchronized boolean completePart(ProofTask part) {
+        completedParts++;
+        if (reported) {
+            return false;
+        }
+        reported = completedParts == parts.size() || (Settings.failFast && part.getException().isPresent());
+        return reported;
+    }
+
+    @Override
+    public CompletableFuture<Void> start(int workerId) {
+        CompletableFuture<Void> result = CompletableFuture.completedFuture(null);
+        for(ProofTask curPart : parts) {
+            result = result.thenCompose(v -> curPart.start(workerId));
+        }
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        for(ProofTask curPart : parts) {
+            curPart.cancel();
+        }
+    }
+
+    @Override
+    public Status getStatus() {
+        boolean allComplete = true;
+        boolean anyStarted = false;
+        for(ProofTask curPart : parts) {
+            allComplete &= curPart.getStatus() == Status.COMPLETE;
+            anyStarted |= curPart.getStatus() != Status.NOT_STARTED;
+        }
+        if (allComplete) {
+            return Status.COMPLETE;
+        }
+        return anyStarted ? Status.RUNNING : Status.NOT_STARTED;
+    }
+
+    @Override
+    public Optional<CheckException> getException() {
+        List<CheckException> partExceptions = new ArrayList();
+        for(ProofTask curPart : parts) {
+            curPart.getException().ifPresent(partExceptions::add);
+        }
+        if (partExceptions.isEmpty()) {
+            return Optional.empty();
+        }
+
+        StringBuilder description = new StringBuilder(failMessage);
+        for(CheckException curException : partExceptions) {
+            description.append("\n");
+            description.append(curException.getDescription());
+        }
+        return Optional.of(new CheckException(file, line, pos, description.toString()));
+    }
+
+    @Override
+    public String getTaskMessage() {
+        return message + " at " + file.getName() + "(" + line + ":" + pos + ")";
+    }
+
+    @Override
+    public double getPriority() {
+        double result = Double.POSITIVE_INFINITY;
+        for(ProofTask curPart : parts) {
+            result = Math.min(result, curPart.getPriority());
+        }
+        return result;
+    }
+
+    @Override
+    public long getMemoryEstimate() {
+        long result = 0;
+        for(ProofTask curPart : parts) {
+            result = Math.max(result, curPart.getMemoryEstimate());
+        }
+        return result;
+    }
+}
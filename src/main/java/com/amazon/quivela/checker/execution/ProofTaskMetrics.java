@@ -0,0 +1,139 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.execution;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/*
+ Timing and cost of one proof task. Times are in milliseconds since the epoch. The queue records when the task was
+ added, started and completed, and a MeasuredProofTask adds what it knows about the solver.
+ */
+public class ProofTaskMetrics {
+
+    public static final String CACHE_HIT = "hit";
+    public static final String CACHE_MISS = "miss";
+    // the task was not checked because an identical task was checked in the same run
+    public static final String CACHE_DUPLICATE = "duplicate";
+    // the task was not checked because the same program failed in an earlier run
+    public static final String CACHE_FAILURE = "failure";
+
+    private final String task;
+    private final long enqueueTime;
+    private long startTime = 0;
+    private long endTime = 0;
+    private int workerId = -1;
+    private boolean failed = false;
+    private String tactic = null;
+    private long programBytes = 0;
+    private String cacheResult = null;
+    private long solverMillis = 0;
+    private long peakRssKb = 0;
+
+    public ProofTaskMetrics(String task, long enqueueTime) {
+        this.task = task;
+        this.enqueueTime = enqueueTime;
+    }
+
+    void started(int workerId, long startTime) {
+        this.workerId = workerId;
+        this.startTime = startTime;
+    }
+
+    void completed(int workerId, long endTime, boolean failed) {
+        // tasks that complete as duplicates are never started, and complete on the worker of the original task
+        if (startTime == 0) {
+            started(workerId, endTime);
+        }
+        this.endTime = endTime;
+        this.failed = failed;
+    }
+
+    public void setTactic(String tactic) {
+        this.tactic = tactic;
+    }
+
+    public void setProgramBytes(long programBytes) {
+        this.programBytes = programBytes;
+    }
+
+    public void setCacheResult(String cacheResult) {
+        this.cacheResult = cacheResult;
+    }
+
+    public void setSolverMillis(long solverMillis) {
+        this.solverMillis = solverMillis;
+    }
+
+    public void setPeakRssKb(long peakRssKb) {
+        this.peakRssKb = peakRssKb;
+    }
+
+    // Write the metrics as CSV if the file name ends with .csv, and as a JSON array otherwise
+    public static void write(List<ProofTaskMetrics> metrics, File file) throws IOException {
+        boolean csv = file.getName().endsWith(".csv");
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            if (csv) {
+                out.println("task,tactic,worker,enqueue_time,start_time,end_time,queue_wait_ms,run_ms,solver_ms,peak_rss_kb,cache,program_bytes,failed");
+            } else {
+                out.println("[");
+            }
+            for(int i = 0; i < metrics.size(); i++) {
+                ProofTaskMetrics cur = metrics.get(i);
+                if (csv) {
+                    out.println(cur.toCsv());
+                } else {
+                    out.println("  " + cur.toJson() + (i + 1 < metrics.size() ? "," : ""));
+                }
+            }
+            if (!csv) {
+                out.println("]");
+            }
+        }
+    }
+
+    private String toCsv() {
+        return csvString(task) + "," + csvString(tactic) + "," + workerId + "," + enqueueTime + "," + startTime + "," + endTime + ","
+                + (startTime - enqueueTime) + "," + (endTime - startTime) + "," + solverMillis + "," + peakRssKb + ","
+                + csvString(cacheResult) + "," + programBytes + "," + failed;
+    }
+
+    private String toJson() {
+        return "{\"task\": " + jsonString(task) + ", \"tactic\": " + jsonString(tactic) + ", \"worker\": " + workerId
+                + ", \"enqueueTime\": " + enqueueTime + ", \"startTime\": " + startTime + ", \"endTime\": " + endTime
+                + ", \"queueWaitMillis\": " + (startTime - enqueueTime) + ", \"runMillis\": " + (endTime - startTime)
+                + ", \"solverMillis\": " + solverMillis + ", \"peakRssKb\": " + peakRssKb
+                + ", \"cache\": " + jsonString(cacheResult) + ", \"programBytes\": " + programBytes + ", \"failed\": " + failed + "}";
+    }
+
+    private static String csvString(String str) {
+        if (str == null) {
+            return "";
+        }
+        return "\"" + str.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonString(String str) {
+        if (str == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder("\"");
+        for(char c : str.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int)c));
+            } else {
+                result.append(c);
+            }
+        }
+        result.append("\"");
+        return result.toString();
+    }
+}
@@ -5,107 +5,445 @@
 
 package com.amazon.quivela.checker.execution;
 
+import com.amazon.quivela.Settings;
 import com.amazon.quivela.checker.CheckException;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+/*
+ Proof tasks are dispatched by a single dispatcher thread that blocks until a worker is idle and a task is pending.
+ Tasks signal completion through the future returned by ProofTask.start, which returns the worker to the idle pool
+ and hands the task to the thread that is waiting in checkTasks.
+ When a task fails, all running tasks are cancelled and pending tasks are dropped. In fail-fast mode, this happens as
+ soon as the failure is observed, and the failure is reported to the checker the next time it adds a task.
+ In keep-going mode, all tasks are completed and the failures are collected for the checker to report.
+ If a memory budget is set, a task is only started when its memory estimate fits in the budget that is left, so only a
+ few heavy tasks run at once. The highest priority task that fits is started first.
+ When batching is enabled, the dispatcher combines a task with other pending tasks that have the same batch key, and
+ the batch runs on one worker. Each task in the batch is reported as complete when the batch completes.
+ When no task is pending, an idle worker runs a helper for the longest running task that accepts help. Helpers are not
+ reported, and a helper is cancelled when a task is added while every worker is busy. Near the end of a run, a helper
+ may use several solver cores, and it then holds one idle worker for each core.
+ A task that has the same identity as a pending or running task is not run. It is attached to the identical task, and
+ completes with its result.
+ The parts of a task group are run as separate tasks, and the group is reported once all of its parts are complete,
+ or in fail-fast mode as soon as one of its parts fails.
+ If a metrics file is set, the queue records the metrics of each task that is added, and of each part of a group, and
+ writes them when checkTasks returns.
+ */
 public class ProofTaskQueue implements ProofTaskConsumer {
 
-    private List<ProofTask> tasks = new ArrayList();
+    private static final long STATUS_INTERVAL = 3000;
+
     private final List<ProofTaskWorker> workers = new ArrayList();
+    // guards the pending tasks and the memory in use
+    private final PriorityQueue<QueuedTask> pending = new PriorityQueue();
+    private final long memoryBudget;
+    private long memoryInUse = 0;
+    private final BlockingQueue<ProofTaskWorker> idleWorkers = new LinkedBlockingQueue();
+    private final BlockingQueue<CompletedTask> completed = new LinkedBlockingQueue();
+    private long nextSequence = 0;
+    private int outstanding = 0;
     private long lastStatusTime = -1;
+    private boolean cancelled = false;
+    private final AtomicReference<CheckException> failure = new AtomicReference();
+    private final List<CheckException> failures = new ArrayList();
+    // the duplicates attached to each pending or running task with an identity, guarded by the pending tasks
+    private final Map<Object, List<IdentifiedProofTask>> inFlight = new HashMap();
+    // the group of each part of a task group that has been added, guarded by the pending tasks
+    private final Map<ProofTask, ProofTaskGroup> groups = new IdentityHashMap();
+    // the metrics of each task that has been added and is not complete, guarded by the pending tasks
+    private final Map<ProofTask, ProofTaskMetrics> taskMetrics = new IdentityHashMap();
+    private final List<ProofTaskMetrics> completedMetrics = Collections.synchronizedList(new ArrayList());
 
-    private static class ProofTaskWorker {
+    private static class QueuedTask implements Comparable<QueuedTask> {
 
-        private final int workerId;
-        private ProofTask task = null;
-
-        public ProofTaskWorker(int workerId) {
-            this.workerId = workerId;
-        }
+        private final ProofTask task;
+        private final long sequence;
+        private final long memoryEstimate;
 
-        public void reset() {
-            this.task = null;
-        }
-        public void setTask(ProofTask task) {
+        public QueuedTask(ProofTask task, long sequence) {
             this.task = task;
+            this.sequence = sequence;
+            this.memoryEstimate = task.getMemoryEstimate();
         }
-        public boolean isRunning() {
-            return task!=null && task.getStatus() == ProofTask.Status.RUNNING;
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            int result = Double.compare(task.getPriority(), other.task.getPriority());
+            if (result == 0) {
+                result = Long.compare(sequence, other.sequence);
+            }
+            return result;
         }
-        public boolean isComplete() {
-            return task!=null && task.getStatus() == ProofTask.Status.COMPLETE;
+    }
+
+    private static class RunningTask {
+
+        private final ProofTask task;
+        private final long memoryEstimate;
+        // the tasks that are reported when this task completes
+        private final List<ProofTask> members;
+        // idle workers that are held for the other cores of a task that uses several cores
+        private final List<ProofTaskWorker> extraWorkers = new ArrayList();
+
+        public RunningTask(ProofTask task, long memoryEstimate) {
+            this(task, memoryEstimate, Collections.singletonList(task));
         }
 
-        private ProofTask getTask() {
-            return task;
+        public RunningTask(ProofTask task, long memoryEstimate, List<ProofTask> members) {
+            this.task = task;
+            this.memoryEstimate = memoryEstimate;
+            this.members = members;
         }
-        public boolean tryStartTask(ProofTask task) {
-            if (getTask() == null) {
-                setTask(task);
-                task.start(workerId);
-                return true;
-            }
-            return false;
+    }
+
+    private static class CompletedTask {
+
+        private final int workerId;
+        private final ProofTask task;
+
+        public CompletedTask(int workerId, ProofTask task) {
+            this.workerId = workerId;
+            this.task = task;
         }
+    }
 
-        public Optional<CheckException> getCheckException() {
-            return task.getException();
+    private static class ProofTaskWorker {
+
+        private final int workerId;
+        private volatile ProofTask task = null;
+        private volatile boolean helper = false;
+        private volatile long startTime = 0;
+
+        public ProofTaskWorker(int workerId) {
+            this.workerId = workerId;
         }
 
         public void printStatus() {
+            ProofTask curTask = task;
             System.out.print("[" + workerId + "]: ");
-            if (!isRunning()) {
+            if (curTask == null) {
                 System.out.println("Waiting");
             } else {
-                System.out.println(task.getTaskMessage());
+                System.out.println((helper ? "Helping: " : "") + curTask.getTaskMessage());
             }
         }
     }
 
     public ProofTaskQueue() {
-        int numWorkers = Runtime.getRuntime().availableProcessors();
+        int numWorkers = Settings.numWorkers > 0 ? Settings.numWorkers : Runtime.getRuntime().availableProcessors();
+        memoryBudget = Settings.memoryBudget * 1024 * 1024;
         for(int i = 0; i < numWorkers; i++) {
             ProofTaskWorker worker = new ProofTaskWorker(i);
             workers.add(worker);
+            idleWorkers.add(worker);
+        }
+
+        Thread dispatcher = new Thread(this::dispatchTasks, "proof-task-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        // don't leave solver processes running when the checker exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::cancel));
+    }
+
+    private void dispatchTasks() {
+        try {
+            while (true) {
+                ProofTaskWorker worker = idleWorkers.take();
+                RunningTask task = takeTask(worker);
+                startTask(worker, task);
+            }
+        } catch (InterruptedException ex) {
+            // dispatcher shut down
         }
     }
 
-    private void completeTasks() throws CheckException {
-        for(ProofTaskWorker curWorker : workers) {
-            if (curWorker.isComplete()) {
-                System.out.println("[" + curWorker.workerId + "] Task complete: " + curWorker.getTask().getTaskMessage());
-                if (curWorker.getCheckException().isPresent()) {
-                    throw(curWorker.getCheckException().get());
+    // Take a pending task to run on an idle worker, or a helper for a running task if no task is pending
+    private RunningTask takeTask(ProofTaskWorker worker) throws InterruptedException {
+        while (true) {
+            synchronized (pending) {
+                RunningTask result = takeAdmissibleTask();
+                if (result != null) {
+                    return gatherBatch(result);
                 }
+                if (!pending.isEmpty()) {
+                    // wait for memory to be released
+                    pending.wait();
+                    continue;
+                }
+            }
 
-                curWorker.reset();
+            // helpers are created without holding the lock, since tasks may complete while holding their own lock
+            RunningTask helper = createHelper(worker);
+            if (helper != null) {
+                return helper;
+            }
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    // wait for a task to be added, or for a task to start or complete that may accept help
+                    pending.wait(STATUS_INTERVAL);
+                }
             }
         }
     }
 
-    private void scheduleTask(ProofTask task) throws CheckException {
-        while(true) {
+    // Take the highest priority pending task whose memory estimate fits in the remaining budget, or return null if
+    // there is none. A task is always admitted when no other task is running, so a task that exceeds the budget can
+    // still run alone.
+    private RunningTask takeAdmissibleTask() {
+        if (!pending.isEmpty() && (memoryBudget <= 0 || memoryInUse == 0)) {
+            QueuedTask next = pending.poll();
+            memoryInUse += next.memoryEstimate;
+            return new RunningTask(next.task, next.memoryEstimate);
+        }
 
-            tryPrintTaskStatus();
+        List<QueuedTask> candidates = new ArrayList(pending);
+        Collections.sort(candidates);
+        for(QueuedTask curTask : candidates) {
+            if (memoryInUse + curTask.memoryEstimate <= memoryBudget) {
+                pending.remove(curTask);
+                memoryInUse += curTask.memoryEstimate;
+                return new RunningTask(curTask.task, curTask.memoryEstimate);
+            }
+        }
+        return null;
+    }
 
-            completeTasks();
+    // Create a helper for the longest running task that accepts help and whose helper fits in the memory budget.
+    // The helper may use the cores of all idle workers, up to the configured limit. The workers are marked as busy
+    // while the pending tasks are locked, so a task that is added later can cancel the helper.
+    private RunningTask createHelper(ProofTaskWorker worker) {
+        int cores = Math.max(1, Math.min(Settings.tailCores, idleWorkers.size() + 1));
+        List<ProofTaskWorker> busyWorkers = new ArrayList();
+        for(ProofTaskWorker curWorker : workers) {
+            if (curWorker.task instanceof AssistedProofTask && !curWorker.helper) {
+                busyWorkers.add(curWorker);
+            }
+        }
+        busyWorkers.sort(Comparator.comparingLong(w -> w.startTime));
 
-            for(ProofTaskWorker curWorker : workers) {
-                if (curWorker.tryStartTask(task)) {
-                    return;
+        for(ProofTaskWorker curWorker : busyWorkers) {
+            ProofTask curTask = curWorker.task;
+            if (curTask == null) {
+                continue;
+            }
+            ProofTask helper = ((AssistedProofTask)curTask).createHelper(cores);
+            if (helper == null) {
+                continue;
+            }
+            long memoryEstimate = helper.getMemoryEstimate();
+            synchronized (pending) {
+                if (pending.isEmpty() && (memoryBudget <= 0 || memoryInUse + memoryEstimate <= memoryBudget)) {
+                    memoryInUse += memoryEstimate;
+                    RunningTask result = new RunningTask(helper, memoryEstimate, Collections.emptyList());
+                    worker.helper = true;
+                    worker.task = helper;
+                    // only the dispatcher takes idle workers, so the workers that were counted are still idle
+                    for(int i = 1; i < helper.getCores(); i++) {
+                        ProofTaskWorker extraWorker = idleWorkers.poll();
+                        if (extraWorker == null) {
+                            break;
+                        }
+                        extraWorker.helper = true;
+                        extraWorker.task = helper;
+                        result.extraWorkers.add(extraWorker);
+                    }
+                    return result;
                 }
             }
+            helper.cancel();
+            return null;
+        }
+        return null;
+    }
 
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-                // do nothing
+    // Combine the task with the highest priority pending tasks that can be checked in the same batch
+    private RunningTask gatherBatch(RunningTask runningTask) {
+        if (Settings.batchSize <= 1 || !(runningTask.task instanceof BatchableProofTask)) {
+            return runningTask;
+        }
+        BatchableProofTask first = (BatchableProofTask)runningTask.task;
+        Object batchKey = first.getBatchKey();
+        if (batchKey == null) {
+            return runningTask;
+        }
+
+        synchronized (pending) {
+            List<BatchableProofTask> batch = new ArrayList();
+            batch.add(first);
+            List<QueuedTask> candidates = new ArrayList(pending);
+            Collections.sort(candidates);
+            for(QueuedTask curTask : candidates) {
+                if (batch.size() >= Settings.batchSize) {
+                    break;
+                }
+                if (curTask.task instanceof BatchableProofTask && batchKey.equals(((BatchableProofTask)curTask.task).getBatchKey())) {
+                    pending.remove(curTask);
+                    batch.add((BatchableProofTask)curTask.task);
+                }
             }
+            if (batch.size() == 1) {
+                return runningTask;
+            }
+
+            ProofTask batchTask = first.createBatch(batch);
+            long memoryEstimate = batchTask.getMemoryEstimate();
+            memoryInUse += memoryEstimate - runningTask.memoryEstimate;
+            return new RunningTask(batchTask, memoryEstimate, new ArrayList(batch));
+        }
+    }
+
+    private void releaseMemory(RunningTask task) {
+        synchronized (pending) {
+            memoryInUse -= task.memoryEstimate;
+            pending.notifyAll();
         }
     }
 
+    private synchronized void startTask(ProofTaskWorker worker, RunningTask runningTask) {
+        if (cancelled) {
+            runningTask.task.cancel();
+            releaseMemory(runningTask);
+            for(ProofTaskWorker curWorker : runningTask.extraWorkers) {
+                curWorker.task = null;
+                curWorker.helper = false;
+                idleWorkers.add(curWorker);
+            }
+            worker.task = null;
+            worker.helper = false;
+            idleWorkers.add(worker);
+            return;
+        }
+
+        ProofTask task = runningTask.task;
+        worker.helper = runningTask.members.isEmpty();
+        worker.startTime = System.currentTimeMillis();
+        worker.task = task;
+        if (Settings.metricsFile != null) {
+            synchronized (pending) {
+                for(ProofTask curTask : runningTask.members) {
+                    taskMetrics.get(curTask).started(worker.workerId, worker.startTime);
+                }
+            }
+        }
+        for(ProofTaskWorker curWorker : runningTask.extraWorkers) {
+            curWorker.helper = true;
+            curWorker.task = task;
+        }
+        task.start(worker.workerId).whenComplete((result, ex) -> {
+            worker.task = null;
+            worker.helper = false;
+            for(ProofTaskWorker curWorker : runningTask.extraWorkers) {
+                curWorker.task = null;
+                curWorker.helper = false;
+                idleWorkers.add(curWorker);
+            }
+            releaseMemory(runningTask);
+            for(ProofTask curTask : runningTask.members) {
+                completeMember(worker, curTask);
+                for(ProofTask curDuplicate : completeDuplicates(curTask)) {
+                    completeMember(worker, curDuplicate);
+                }
+            }
+            idleWorkers.add(worker);
+        });
+    }
+
+    private void completeMember(ProofTaskWorker worker, ProofTask task) {
+        ProofTaskGroup group;
+        ProofTaskMetrics metrics;
+        synchronized (pending) {
+            group = groups.remove(task);
+            metrics = taskMetrics.remove(task);
+        }
+        if (metrics != null) {
+            metrics.completed(worker.workerId, System.currentTimeMillis(), task.getException().isPresent());
+            if (task instanceof MeasuredProofTask) {
+                ((MeasuredProofTask)task).recordMetrics(metrics);
+            }
+            completedMetrics.add(metrics);
+        }
+        if (group != null) {
+            if (!group.completePart(task)) {
+                return;
+            }
+            task = group;
+        }
+
+        if (task.getException().isPresent() && failure.compareAndSet(null, task.getException().get()) && Settings.failFast) {
+            // this runs as the task completes, so the running tasks are cancelled on another thread to avoid taking the
+            // locks of the queue and the tasks in a different order than the dispatcher
+            CompletableFuture.runAsync(this::cancel);
+        }
+        completed.add(new CompletedTask(worker.workerId, task));
+    }
+
+    // Complete the duplicates that are attached to a task that has completed
+    private List<IdentifiedProofTask> completeDuplicates(ProofTask task) {
+        if (!(task instanceof IdentifiedProofTask)) {
+            return Collections.emptyList();
+        }
+        Object identity = ((IdentifiedProofTask)task).getIdentity();
+        if (identity == null) {
+            return Collections.emptyList();
+        }
+
+        List<IdentifiedProofTask> duplicates;
+        synchronized (pending) {
+            duplicates = inFlight.remove(identity);
+        }
+        if (duplicates == null) {
+            return Collections.emptyList();
+        }
+        for(IdentifiedProofTask curDuplicate : duplicates) {
+            curDuplicate.completeAsDuplicate(task);
+        }
+        return duplicates;
+    }
+
+    // Cancel all running tasks and drop all pending tasks
+    public synchronized void cancel() {
+        cancelled = true;
+        synchronized (pending) {
+            pending.clear();
+            inFlight.clear();
+        }
+        for(ProofTaskWorker curWorker : workers) {
+            ProofTask curTask = curWorker.task;
+            if (curTask != null) {
+                curTask.cancel();
+            }
+        }
+    }
+
+    private void completeTask(CompletedTask completedTask) throws CheckException {
+        outstanding--;
+        System.out.println("[" + completedTask.workerId + "] Task complete: " + completedTask.task.getTaskMessage());
+        if (completedTask.task.getException().isPresent()) {
+            if (Settings.keepGoing) {
+                failures.add(completedTask.task.getException().get());
+                return;
+            }
+            cancel();
+            throw(completedTask.task.getException().get());
+        }
+    }
+
+    // Failed tasks that were collected in keep-going mode
+    public List<CheckException> getFailures() {
+        return failures;
+    }
+
     private void printTaskStatus() {
         LocalDateTime now = LocalDateTime.now();
         System.out.println("[" + now.getHour() + ":" + now.getMinute() + ":" + now.getSecond() + "] Proof worker status:");
@@ -116,46 +454,112 @@ public class ProofTaskQueue implements ProofTaskConsumer {
         System.out.println("-------------------------------------------------------------");
     }
 
-    private void tryPrintTaskStatus() {
+    // Print the worker status if it is due, and return the time until the next status should be printed
+    private long tryPrintTaskStatus() {
         long currentTime = System.currentTimeMillis();
         long timeDiff = currentTime - lastStatusTime;
-        if (timeDiff > 3000) {
+        if (timeDiff > STATUS_INTERVAL) {
             printTaskStatus();
             lastStatusTime = currentTime;
+            timeDiff = 0;
         }
+        return STATUS_INTERVAL - timeDiff;
     }
 
+    // Wait for all tasks that have been added to complete
     public void checkTasks() throws CheckException {
 
-        tasks.sort((t1, t2) -> (t1.getPriority() < t2.getPriority() ? -1 : t1.getPriority() > t2.getPriority() ? 1 : 0));
-
-        while (!tasks.isEmpty()) {
-            scheduleTask(tasks.remove(0));
+        try {
+            while (outstanding > 0) {
+                long timeout = tryPrintTaskStatus();
+                try {
+                    CompletedTask completedTask = completed.poll(timeout, TimeUnit.MILLISECONDS);
+                    if (completedTask != null) {
+                        completeTask(completedTask);
+                    }
+                } catch (InterruptedException ex) {
+                    throw new CheckException(ex);
+                }
+            }
+        } finally {
+            // metrics are also written when the check fails, since failed runs are often the slow ones
+            writeMetrics();
         }
 
-        boolean running = true;
-        while(running) {
-            running = false;
-            for(ProofTaskWorker curWorker : workers) {
-                running |= curWorker.isRunning();
-            }
+        System.out.println("Proof tasks completed");
 
-            tryPrintTaskStatus();
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-                // do nothing
+    }
+
+    private void writeMetrics() {
+        if (Settings.metricsFile == null) {
+            return;
+        }
+        try {
+            synchronized (completedMetrics) {
+                ProofTaskMetrics.write(completedMetrics, new File(Settings.metricsFile));
             }
+        } catch (IOException ex) {
+            System.err.println("Failed to write metrics to " + Settings.metricsFile + ": " + ex.getMessage());
+        }
+    }
 
-            completeTasks();
+    // Tasks are dispatched as soon as they are added, so solving overlaps with translating the rest of the development
+    @Override
+    public void add(ProofTask task) throws CheckException {
+        if (Settings.failFast && failure.get() != null) {
+            throw failure.get();
+        }
+        outstanding++;
+        if (task instanceof ProofTaskGroup) {
+            for(ProofTask curPart : ((ProofTaskGroup)task).getParts()) {
+                synchronized (pending) {
+                    groups.put(curPart, (ProofTaskGroup)task);
+                }
+                enqueue(curPart);
+            }
+        } else {
+            enqueue(task);
         }
 
-        System.out.println("Proof tasks completed");
+        // tasks take precedence over helpers, but a helper is only cancelled when no worker is free to run the task
+        if (!hasFreeWorker()) {
+            for(ProofTaskWorker curWorker : workers) {
+                ProofTask curTask = curWorker.task;
+                if (curWorker.helper && curTask != null) {
+                    curTask.cancel();
+                    break;
+                }
+            }
+        }
+    }
 
+    // A worker is free when it has no task, which includes a worker that the dispatcher has taken from the idle workers
+    // and that is waiting for a task to be added
+    private boolean hasFreeWorker() {
+        for(ProofTaskWorker curWorker : workers) {
+            if (curWorker.task == null) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    @Override
-    public void add(ProofTask task) {
-        tasks.add(task);
+    private void enqueue(ProofTask task) {
+        synchronized (pending) {
+            if (Settings.metricsFile != null) {
+                taskMetrics.put(task, new ProofTaskMetrics(task.getTaskMessage(), System.currentTimeMillis()));
+            }
+            Object identity = task instanceof IdentifiedProofTask ? ((IdentifiedProofTask)task).getIdentity() : null;
+            if (identity != null) {
+                List<IdentifiedProofTask> duplicates = inFlight.get(identity);
+                if (duplicates != null) {
+                    duplicates.add((IdentifiedProofTask)task);
+                    return;
+                }
+                inFlight.put(identity, new ArrayList());
+            }
+            pending.add(new QueuedTask(task, nextSequence++));
+            pending.notifyAll();
+        }
     }
 }
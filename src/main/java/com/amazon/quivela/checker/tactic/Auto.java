@@ -5,17 +5,23 @@
 
 package com.amazon.quivela.checker.tactic;
 
+import com.amazon.quivela.Settings;
 import com.amazon.quivela.util.PrettyPrintStream;
 import com.amazon.quivela.checker.CheckException;
+import com.amazon.quivela.checker.execution.ProofTask;
 import com.amazon.quivela.checker.execution.ProofTaskConsumer;
+import com.amazon.quivela.checker.execution.ProofTaskGroup;
 import com.amazon.quivela.checker.SymbolTable;
+import com.amazon.quivela.checker.event.TranslationEvent;
 import com.amazon.quivela.checker.tactic.boogie.*;
 import com.amazon.quivela.parser.node.*;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /*
@@ -40,7 +46,7 @@ public class Auto {
     }
 
     // Check that left is equivalent to right
-    public void check(File file, int line, int pos, PExpr left, PExpr right, String message) throws CheckException {
+    public void check(File file, int line, int pos, String theorem, PExpr left, PExpr right, String message) throws CheckException {
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         PrettyPrintStream out = new PrettyPrintStream(baos);
@@ -49,14 +55,20 @@ public class Auto {
         BoogieMethods methods = new BoogieMethods();
         BoogieConstants constants = new BoogieConstants();
 
+        TranslationEvent headerEvent = new TranslationEvent(theorem, "auto", TranslationEvent.HEADER, file, line, pos);
         BoogieUtil.writePrelude(out);
         BoogieUtil.writeSymbols(symbolTable, out);
         BoogieUtil.writeFuncDecls(symbolTable, functions, methods, classes, constants, out);
         BoogieUtil.writeAxioms(symbolTable, axioms, constants, identifiedClasses, functions, out);
+        headerEvent.end(baos.size());
+        TranslationEvent goalEvent = new TranslationEvent(theorem, "auto", TranslationEvent.GOAL, file, line, pos);
+        String header = baos.toString();
 
         // write left procedure
         BoogieClassDecls classDecls = new BoogieClassDecls(symbolTable, functions, methods, classes, constants, out);
         left.apply(classDecls);
+        // the task can only be batched when nothing is declared after the header except for the goal procedures
+        boolean goalOnly = baos.size() == header.length();
         ByteArrayOutputStream leftBaos = new ByteArrayOutputStream();
         PrettyPrintStream leftOut = new PrettyPrintStream(leftBaos);
         BoogieExprConverter leftExprConv = new BoogieExprConverter(symbolTable, functions, methods, classes, new HashMap(), new HashMap(), leftOut);
@@ -87,7 +99,9 @@ public class Auto {
 
         // write right procedure
         classDecls = new BoogieClassDecls(symbolTable, functions, methods, classes, constants, out);
+        int rightDeclsStart = baos.size();
         right.apply(classDecls);
+        goalOnly &= baos.size() == rightDeclsStart;
         ByteArrayOutputStream rightBaos = new ByteArrayOutputStream();
         PrettyPrintStream rightOut = new PrettyPrintStream(rightBaos);
         BoogieExprConverter rightExprConv = new BoogieExprConverter(symbolTable, functions, methods, classes, new HashMap(), new HashMap(), rightOut);
@@ -151,8 +165,30 @@ public class Auto {
 
         out.close();
 
-        BoogieProofTask boogieTask = new BoogieProofTask(file, line, pos, baos.toString(), message, "Goal check failed.", 3);
-        taskConsumer.add(boogieTask);
+        String program = baos.toString();
+        goalEvent.end(program.length() - header.length());
+        if (!Settings.splitGoals) {
+            taskConsumer.add(createTask(file, line, pos, header, program.substring(header.length()), goalOnly, message, "Goal check failed."));
+            return;
+        }
+
+        // check each postcondition of both, and each assertion, as a separate task
+        List<BoogieGoal> goals = BoogieGoal.split(program.substring(header.length()));
+        List<ProofTask> goalTasks = new ArrayList();
+        for(int i = 0; i < goals.size(); i++) {
+            BoogieGoal curGoal = goals.get(i);
+            String goalMessage = goals.size() == 1 ? message : message + ", goal " + (i + 1) + " of " + goals.size();
+            String goalFailMessage = curGoal.getGoal() == null ? "Goal check failed." : "The goal " + curGoal.getGoal() + " could not be proved.";
+            goalTasks.add(createTask(file, line, pos, header, curGoal.getProcedures(), goalOnly, goalMessage, goalFailMessage));
+        }
+        taskConsumer.add(new ProofTaskGroup(file, line, pos, goalTasks, message, "Goal check failed."));
+    }
+
+    private BoogieProofTask createTask(File file, int line, int pos, String header, String goal, boolean goalOnly, String message, String failMessage) {
+        if (goalOnly) {
+            return new BoogieProofTask(file, line, pos, header, goal, message, failMessage, "auto");
+        }
+        return new BoogieProofTask(file, line, pos, header + goal, message, failMessage, "auto");
     }
 
 }
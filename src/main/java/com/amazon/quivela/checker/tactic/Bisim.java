@@ -5,9 +5,13 @@
 
 package com.amazon.quivela.checker.tactic;
 
+import com.amazon.quivela.checker.event.TranslationEvent;
+import com.amazon.quivela.checker.execution.ProofTask;
 import com.amazon.quivela.checker.execution.ProofTaskConsumer;
+import com.amazon.quivela.checker.execution.ProofTaskGroup;
 import com.amazon.quivela.checker.visitor.BisimPropScopesCollector;
 import com.amazon.quivela.checker.visitor.NewParamsCollector;
+import com.amazon.quivela.Settings;
 import com.amazon.quivela.util.PrettyPrintStream;
 import com.amazon.quivela.checker.*;
 import com.amazon.quivela.parser.node.*;
@@ -41,6 +45,19 @@ public class Bisim {
         }
     }
 
+    // The check of the constructors or of one method, which is a separate proof task
+    private static class BisimPart {
+        private final String procedure;
+        private final String name;
+        private final String failMessage;
+
+        public BisimPart(String procedure, String name, String failMessage) {
+            this.procedure = procedure;
+            this.name = name;
+            this.failMessage = failMessage;
+        }
+    }
+
     private final SymbolTable symbolTable;
     private final BoogieFunctions functions;
     private final Collection<AAxiomDecl> axioms;
@@ -86,17 +103,24 @@ public class Bisim {
         // and fields at the same position are equal
         List<BoogieBisimProp> boogieProps = new ArrayList();
         if (props == null) {
-            String boogieProp = "heap1==heap2";
+            List<String> conjuncts = new ArrayList();
+            conjuncts.add("heap1==heap2");
             for (int i = 0; i < leftObj.getFields().size(); i++) {
                 if (rightObj.getFields().size() > i) {
                     String leftMember = "objectMemory1[internal.attribute.field." + leftObj.getFields().get(i) + "]";
                     String rightMember = "objectMemory2[internal.attribute.field." + rightObj.getFields().get(i) + "]";
-                    boogieProp = boogieProp + " && " + leftMember + "==" + rightMember;
+                    conjuncts.add(leftMember + "==" + rightMember);
                 }
             }
             BisimPropScopesCollector scopesCol = new BisimPropScopesCollector();
             scopesCol.setInvariant(true);
-            boogieProps.add(new BoogieBisimProp(boogieProp, scopesCol));
+            if (Settings.splitGoals) {
+                for(String curConjunct : conjuncts) {
+                    boogieProps.add(new BoogieBisimProp(curConjunct, scopesCol));
+                }
+            } else {
+                boogieProps.add(new BoogieBisimProp(String.join(" && ", conjuncts), scopesCol));
+            }
         } else {
             for(ABisimProp curProp : props) {
                 BoogiePropConverter propConverter = new BoogiePropConverter(symbolTable, constants, identifiedClasses, functions, new HashMap(), out, "heap1", "heap2", "objectMemory1", "objectMemory2", leftObj.getFields(), rightObj.getFields());
@@ -119,7 +143,7 @@ public class Bisim {
     }
 
     // Check that leftNew is equivalent to rightNew using the supplied invariants.
-    public void check(File file, int line, int pos, PNewExpr leftNew, PNewExpr rightNew, List<ABisimProp> invariants) throws CheckException {
+    public void check(File file, int line, int pos, String theorem, PNewExpr leftNew, PNewExpr rightNew, List<ABisimProp> invariants) throws CheckException {
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         PrettyPrintStream out = new PrettyPrintStream(baos);
@@ -127,10 +151,13 @@ public class Bisim {
         BoogieMethods methods = new BoogieMethods();
         BoogieConstants constants = new BoogieConstants();
 
+        TranslationEvent headerEvent = new TranslationEvent(theorem, "bisim", TranslationEvent.HEADER, file, line, pos);
         BoogieUtil.writePrelude(out);
         BoogieUtil.writeSymbols(symbolTable, out);
         BoogieUtil.writeFuncDecls(symbolTable, functions, methods, classes, constants, out);
         BoogieUtil.writeAxioms(symbolTable, axioms, constants, identifiedClasses, functions, out);
+        headerEvent.end(baos.size());
+        TranslationEvent goalEvent = new TranslationEvent(theorem, "bisim", TranslationEvent.GOAL, file, line, pos);
 
 
         BoogieClassDecls classDecls = new BoogieClassDecls(symbolTable, functions, methods, classes, constants, out);
@@ -159,31 +186,34 @@ public class Bisim {
         // write both.new
         List<BoogieBisimProp> boogieInvariants = toBoogieProps(invariants, constants, leftObj, rightObj, out);
 
-        out.println("procedure both.new(internal.objectId : ObjectId) returns (functionState1 : FunctionState, functionState2 : FunctionState)");
+        // each procedure is checked by its own task, and declarations are written to the shared header
+        ByteArrayOutputStream newBaos = new ByteArrayOutputStream();
+        PrettyPrintStream newOut = new PrettyPrintStream(newBaos);
+        newOut.println("procedure both.new(internal.objectId : ObjectId) returns (functionState1 : FunctionState, functionState2 : FunctionState)");
 
         for (BoogieBisimProp curProp : boogieInvariants) {
             if (curProp.getScopes().isInvariant()) {
-                out.println("ensures (" + curProp.getProp() + ");");
+                newOut.println("ensures (" + curProp.getProp() + ");");
             }
         }
 
-        out.println("ensures functionState1==functionState1;");
-        out.println("modifies objectMemory;");
-        out.println("modifies objectMemory1;");
-        out.println("modifies objectMemory2;");
-        out.println("modifies functionState;");
-        out.println("modifies heap1;");
-        out.println("modifies heap2;");
-        out.println("modifies heap;");
-        out.println("modifies checkpoints;");
-        out.println("modifies checkpoints1;");
-        out.println("modifies checkpoints2;");
-        out.println("{");
+        newOut.println("ensures functionState1==functionState1;");
+        newOut.println("modifies objectMemory;");
+        newOut.println("modifies objectMemory1;");
+        newOut.println("modifies objectMemory2;");
+        newOut.println("modifies functionState;");
+        newOut.println("modifies heap1;");
+        newOut.println("modifies heap2;");
+        newOut.println("modifies heap;");
+        newOut.println("modifies checkpoints;");
+        newOut.println("modifies checkpoints1;");
+        newOut.println("modifies checkpoints2;");
+        newOut.println("{");
 
-        out.pushTab();
+        newOut.pushTab();
 
-        out.println("var initFunctionState : FunctionState;");
-        out.println("var initHeap : Heap;");
+        newOut.println("var initFunctionState : FunctionState;");
+        newOut.println("var initHeap : Heap;");
 
         // convert new parameters
         ByteArrayOutputStream leftNewParamsBaos = new ByteArrayOutputStream();
@@ -223,40 +253,40 @@ public class Bisim {
         // declare temporaries and locals
         for(String curVar : temporaries.keySet()) {
             String type = temporaries.get(curVar);
-            out.println("var " + curVar + ":" + type + ";");
+            newOut.println("var " + curVar + ":" + type + ";");
         }
 
         for(String curVar : temporaries.keySet()) {
             String type = temporaries.get(curVar);
             if (type.equals("T")) {
-                out.println(curVar + " := defaultValue;");
+                newOut.println(curVar + " := defaultValue;");
             }
         }
 
-        out.println("initFunctionState := functionState;");
-        out.println("initHeap := heap;");
+        newOut.println("initFunctionState := functionState;");
+        newOut.println("initHeap := heap;");
 
-        out.println("// left new");
-        out.println("checkpoints := initCheckpoints;");
-        out.println("objectMemory := toMemory(defaultValue);");
-        out.println(leftNewParamsBaos.toString());
+        newOut.println("// left new");
+        newOut.println("checkpoints := initCheckpoints;");
+        newOut.println("objectMemory := toMemory(defaultValue);");
+        newOut.println(leftNewParamsBaos.toString());
 
-        out.println("checkpoints1 := checkpoints;");
-        out.println("objectMemory1 := objectMemory;");
-        out.println("functionState1 := functionState;");
-        out.println("heap1 := heap;");
+        newOut.println("checkpoints1 := checkpoints;");
+        newOut.println("objectMemory1 := objectMemory;");
+        newOut.println("functionState1 := functionState;");
+        newOut.println("heap1 := heap;");
 
-        out.println("functionState := initFunctionState;");
-        out.println("heap := initHeap;");
-        out.println("// right new");
-        out.println("checkpoints := initCheckpoints;");
-        out.println("objectMemory := toMemory(defaultValue);");
-        out.println(rightNewParamsBaos.toString());
+        newOut.println("functionState := initFunctionState;");
+        newOut.println("heap := initHeap;");
+        newOut.println("// right new");
+        newOut.println("checkpoints := initCheckpoints;");
+        newOut.println("objectMemory := toMemory(defaultValue);");
+        newOut.println(rightNewParamsBaos.toString());
 
-        out.println("checkpoints2 := checkpoints;");
-        out.println("objectMemory2 := objectMemory;");
-        out.println("functionState2 := functionState;");
-        out.println("heap2 := heap;");
+        newOut.println("checkpoints2 := checkpoints;");
+        newOut.println("objectMemory2 := objectMemory;");
+        newOut.println("functionState2 := functionState;");
+        newOut.println("heap2 := heap;");
 
         // TODO: duplicate code below
         if (invariants != null) {
@@ -277,17 +307,21 @@ public class Bisim {
                                 "checkpoints2[" + rightId + "][checkpointHeap]",
                                 "checkpoints1[" + leftId + "][checkpointMemory]",
                                 "checkpoints2[" + rightId + "][checkpointMemory]");
-                        out.println("assert (" + checkpointProp + ");");
-                        out.println("assert (checkpoints1[" + leftId + "][checkpointFunctionState]==checkpoints2[" + rightId + "][checkpointFunctionState]);");
+                        newOut.println("assert (" + checkpointProp + ");");
+                        newOut.println("assert (checkpoints1[" + leftId + "][checkpointFunctionState]==checkpoints2[" + rightId + "][checkpointFunctionState]);");
                     }
                 }
 
             }
         }
 
-        out.popTab();
-        out.println("}");
-        out.println();
+        newOut.popTab();
+        newOut.println("}");
+        newOut.println();
+        newOut.close();
+
+        List<BisimPart> parts = new ArrayList();
+        parts.add(new BisimPart(newBaos.toString(), "constructor", "The invariants are not established by the constructors."));
 
         // create a "both" method from left methods
         // analysis fails if an object has a method that the other object does not
@@ -301,6 +335,8 @@ public class Bisim {
 
             temporaries = new HashMap();
             checkpoints = new HashMap();
+            ByteArrayOutputStream methodBaos = new ByteArrayOutputStream();
+            PrettyPrintStream methodOut = new PrettyPrintStream(methodBaos);
 
             if(! rightObj.getMethodSigs().containsKey(methodName)) {
                 throw new CheckException(file, line, pos, "Objects in bisimulation must have identical method signatures.");
@@ -324,36 +360,36 @@ public class Bisim {
 
             int numArgs = Math.max(leftMethodSig.size(), rightMethodSig.size());
 
-            out.print("procedure both." + methodName + "(internal.objectId : ObjectId");
+            methodOut.print("procedure both." + methodName + "(internal.objectId : ObjectId");
             for(int i = 0; i< numArgs; i++) {
-                out.print(",a" + i + ":T");
+                methodOut.print(",a" + i + ":T");
             }
-            out.println(") returns (internal.r1:T, internal.r2:T, functionState1:FunctionState, functionState2:FunctionState)");
+            methodOut.println(") returns (internal.r1:T, internal.r2:T, functionState1:FunctionState, functionState2:FunctionState)");
             for (BoogieBisimProp curProp : boogieInvariants) {
                 if (curProp.getScopes().isInvariant()) {
-                    out.println("requires (" + curProp.getProp() + ");");
+                    methodOut.println("requires (" + curProp.getProp() + ");");
                 }
             }
 
-            out.println("modifies functionState;");
-            out.println("modifies heap1;");
-            out.println("modifies heap2;");
-            out.println("modifies heap;");
-            out.println("modifies objectMemory1;");
-            out.println("modifies objectMemory2;");
-            out.println("modifies objectMemory;");
-            out.println("modifies checkpoints;");
-            out.println("modifies checkpoints1;");
-            out.println("modifies checkpoints2;");
+            methodOut.println("modifies functionState;");
+            methodOut.println("modifies heap1;");
+            methodOut.println("modifies heap2;");
+            methodOut.println("modifies heap;");
+            methodOut.println("modifies objectMemory1;");
+            methodOut.println("modifies objectMemory2;");
+            methodOut.println("modifies objectMemory;");
+            methodOut.println("modifies checkpoints;");
+            methodOut.println("modifies checkpoints1;");
+            methodOut.println("modifies checkpoints2;");
 
             for (BoogieBisimProp curProp : boogieInvariants) {
                 if (curProp.getScopes().isInvariant()) {
-                    out.println("ensures (" + curProp.getProp() + ");");
+                    methodOut.println("ensures (" + curProp.getProp() + ");");
                 }
             }
-            out.println("ensures functionState1==functionState2;");
-            out.println("ensures internal.r1==internal.r2; {");
-            out.pushTab();
+            methodOut.println("ensures functionState1==functionState2;");
+            methodOut.println("ensures internal.r1==internal.r2; {");
+            methodOut.pushTab();
 
             ByteArrayOutputStream leftBaos = new ByteArrayOutputStream();
             PrettyPrintStream leftExprOut = new PrettyPrintStream(leftBaos);
@@ -401,66 +437,66 @@ public class Bisim {
 
             for(String curVar : allDeclaredVars.keySet()) {
                 String type = allDeclaredVars.get(curVar);
-                out.println("var " + curVar + ":" + type + ";");
+                methodOut.println("var " + curVar + ":" + type + ";");
             }
 
-            out.println("var initFunctionState : FunctionState;");
-            out.println();
+            methodOut.println("var initFunctionState : FunctionState;");
+            methodOut.println();
 
 
-            out.println("initFunctionState := functionState;");
-            out.println("heap := heap1;");
-            out.println("objectMemory := objectMemory1;");
-            out.println("checkpoints := initCheckpoints;");
+            methodOut.println("initFunctionState := functionState;");
+            methodOut.println("heap := heap1;");
+            methodOut.println("objectMemory := objectMemory1;");
+            methodOut.println("checkpoints := initCheckpoints;");
 
             for(Checkpoint curCheckpoint : leftExprConverter.getCheckpoints().values()) {
-                BoogieUtil.saveCheckpoint(out, curCheckpoint.getId(), "defaultValue");
+                BoogieUtil.saveCheckpoint(methodOut, curCheckpoint.getId(), "defaultValue");
             }
 
-            out.println("// left method");
+            methodOut.println("// left method");
 
             for(String curVar : allDeclaredVars.keySet()) {
                 String type = allDeclaredVars.get(curVar);
                 if (type.equals("T")) {
-                    out.println(curVar + " := defaultValue;");
+                    methodOut.println(curVar + " := defaultValue;");
                 }
             }
-            out.println();
+            methodOut.println();
 
-            out.println(leftBaos.toString());
-            out.println("internal.r1 := " + leftExprConverter.getValue(BoogieType.Opaque) + ";");
+            methodOut.println(leftBaos.toString());
+            methodOut.println("internal.r1 := " + leftExprConverter.getValue(BoogieType.Opaque) + ";");
 
-            out.println("functionState1 := functionState;");
-            out.println("heap1 := heap;");
-            out.println("objectMemory1 := objectMemory;");
-            out.println("checkpoints1 := checkpoints;");
+            methodOut.println("functionState1 := functionState;");
+            methodOut.println("heap1 := heap;");
+            methodOut.println("objectMemory1 := objectMemory;");
+            methodOut.println("checkpoints1 := checkpoints;");
 
-            out.println("functionState := initFunctionState;");
-            out.println("heap := heap2;");
-            out.println("objectMemory := objectMemory2;");
-            out.println("checkpoints := initCheckpoints;");
+            methodOut.println("functionState := initFunctionState;");
+            methodOut.println("heap := heap2;");
+            methodOut.println("objectMemory := objectMemory2;");
+            methodOut.println("checkpoints := initCheckpoints;");
 
             for(Checkpoint curCheckpoint : leftExprConverter.getCheckpoints().values()) {
-                BoogieUtil.saveCheckpoint(out, curCheckpoint.getId(), "defaultValue");
+                BoogieUtil.saveCheckpoint(methodOut, curCheckpoint.getId(), "defaultValue");
             }
 
-            out.println();
-            out.println("// right method");
+            methodOut.println();
+            methodOut.println("// right method");
 
             for(String curVar : allDeclaredVars.keySet()) {
                 String type = allDeclaredVars.get(curVar);
                 if (type.equals("T")) {
-                    out.println(curVar + " := defaultValue;");
+                    methodOut.println(curVar + " := defaultValue;");
                 }
             }
-            out.println();
-            out.println(rightBaos.toString());
-            out.println("internal.r2 := " + rightExprConverter.getValue(BoogieType.Opaque) + ";");
+            methodOut.println();
+            methodOut.println(rightBaos.toString());
+            methodOut.println("internal.r2 := " + rightExprConverter.getValue(BoogieType.Opaque) + ";");
 
-            out.println("functionState2 := functionState;");
-            out.println("heap2 := heap;");
-            out.println("objectMemory2 := objectMemory;");
-            out.println("checkpoints2 := checkpoints;");
+            methodOut.println("functionState2 := functionState;");
+            methodOut.println("heap2 := heap;");
+            methodOut.println("objectMemory2 := objectMemory;");
+            methodOut.println("checkpoints2 := checkpoints;");
 
             // insert checkpoint assertions
             if (invariants != null) {
@@ -481,22 +517,45 @@ public class Bisim {
                                     "checkpoints2[" + rightId + "][checkpointHeap]",
                                     "checkpoints1[" + leftId + "][checkpointMemory]",
                                     "checkpoints2[" + rightId + "][checkpointMemory]");
-                            out.println("assert (" + checkpointProp + ");");
-                            out.println("assert (checkpoints1[" + leftId + "][checkpointFunctionState]==checkpoints2[" + rightId + "][checkpointFunctionState]);");
+                            methodOut.println("assert (" + checkpointProp + ");");
+                            methodOut.println("assert (checkpoints1[" + leftId + "][checkpointFunctionState]==checkpoints2[" + rightId + "][checkpointFunctionState]);");
                         }
                     }
 
                 }
             }
 
-            out.popTab();
-            out.println("}");
-            out.println();
+            methodOut.popTab();
+            methodOut.println("}");
+            methodOut.println();
+            methodOut.close();
+            parts.add(new BisimPart(methodBaos.toString(), "method " + methodName, "The invariants are not preserved by method " + methodName + ", or its results differ."));
         }
 
         out.close();
-        BoogieProofTask boogieTask = new BoogieProofTask(file, line, pos, baos.toString(), "Checking bisimulation", "Bisimulation check failed.", 2);
-        taskConsumer.add(boogieTask);
+        String header = baos.toString();
+        long goalBytes = 0;
+        for(BisimPart curPart : parts) {
+            goalBytes += curPart.procedure.length();
+        }
+        goalEvent.end(goalBytes);
+        List<ProofTask> partTasks = new ArrayList();
+        for(BisimPart curPart : parts) {
+            if (!Settings.splitGoals) {
+                partTasks.add(new BoogieProofTask(file, line, pos, header + curPart.procedure, "Checking bisimulation " + curPart.name, curPart.failMessage, "bisim"));
+                continue;
+            }
+
+            // check each invariant conjunct and each other postcondition of the part as a separate task
+            List<BoogieGoal> goals = BoogieGoal.split(curPart.procedure);
+            for(int i = 0; i < goals.size(); i++) {
+                BoogieGoal curGoal = goals.get(i);
+                String goalMessage = goals.size() == 1 ? "Checking bisimulation " + curPart.name : "Checking bisimulation " + curPart.name + ", goal " + (i + 1) + " of " + goals.size();
+                String goalFailMessage = curGoal.getGoal() == null ? curPart.failMessage : curPart.failMessage + " The goal " + curGoal.getGoal() + " could not be proved.";
+                partTasks.add(new BoogieProofTask(file, line, pos, header + curGoal.getProcedures(), goalMessage, goalFailMessage, "bisim"));
+            }
+        }
+        taskConsumer.add(new ProofTaskGroup(file, line, pos, partTasks, "Checking bisimulation", "Bisimulation check failed."));
     }
 
 }
@@ -6,8 +6,10 @@
 package com.amazon.quivela.checker.tactic;
 
 import com.amazon.quivela.util.PrettyPrintStream;
+import com.amazon.quivela.checker.CheckException;
 import com.amazon.quivela.checker.execution.ProofTaskConsumer;
 import com.amazon.quivela.checker.SymbolTable;
+import com.amazon.quivela.checker.event.TranslationEvent;
 import com.amazon.quivela.checker.tactic.boogie.*;
 import com.amazon.quivela.parser.node.*;
 
@@ -37,7 +39,7 @@ public class BoundsAuto {
     }
 
     // Check the actual <= max
-    public void check(File file, int line, int pos, PBoundsExpr actual, PBoundsExpr max) {
+    public void check(File file, int line, int pos, String theorem, PBoundsExpr actual, PBoundsExpr max) throws CheckException {
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         PrettyPrintStream out = new PrettyPrintStream(baos);
@@ -46,10 +48,14 @@ public class BoundsAuto {
         BoogieMethods methods = new BoogieMethods();
         BoogieConstants constants = new BoogieConstants();
 
+        TranslationEvent headerEvent = new TranslationEvent(theorem, "bounds", TranslationEvent.HEADER, file, line, pos);
         BoogieUtil.writePrelude(out);
         BoogieUtil.writeSymbols(symbolTable, out);
         BoogieUtil.writeFuncDecls(symbolTable, functions, methods, classes, constants, out);
         BoogieUtil.writeAxioms(symbolTable, axioms, constants, identifiedClasses, functions, out);
+        headerEvent.end(baos.size());
+        TranslationEvent goalEvent = new TranslationEvent(theorem, "bounds", TranslationEvent.GOAL, file, line, pos);
+        String header = baos.toString();
 
         ByteArrayOutputStream leftBaos = new ByteArrayOutputStream();
         PrettyPrintStream leftOut = new PrettyPrintStream(leftBaos);
@@ -63,6 +69,9 @@ public class BoundsAuto {
         max.apply(rightExprConv);
         String rightValue = rightExprConv.getValue().toRealString();
 
+        // the task can only be batched when nothing is declared after the header except for the goal procedures
+        boolean goalOnly = baos.size() == header.length();
+
         out.println("procedure {:inline 1} left() returns (internal.r : real)");
         out.println("{");
         out.pushTab();
@@ -100,7 +109,15 @@ public class BoundsAuto {
 
         out.close();
 
-        BoogieProofTask boogieTask = new BoogieProofTask(file, line, pos, baos.toString(), "Checking bounds", "Bounds check failed: cannot prove that " + actual.toString() + "\n <= \n" + max.toString(), 4);
+        String program = baos.toString();
+        goalEvent.end(program.length() - header.length());
+        String failMessage = "Bounds check failed: cannot prove that " + actual.toString() + "\n <= \n" + max.toString();
+        BoogieProofTask boogieTask;
+        if (goalOnly) {
+            boogieTask = new BoogieProofTask(file, line, pos, header, program.substring(header.length()), "Checking bounds", failMessage, "bounds");
+        } else {
+            boogieTask = new BoogieProofTask(file, line, pos, program, "Checking bounds", failMessage, "bounds");
+        }
         taskConsumer.add(boogieTask);
 
     }
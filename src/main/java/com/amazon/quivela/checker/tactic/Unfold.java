@@ -25,13 +25,15 @@ import java.util.*;
 public class Unfold {
 
     private File file;
+    private String theorem;
     private ProofTaskConsumer taskConsumer;
     private BoogieFunctions funcTable;
     private List<CheckException> exceptions = new ArrayList<CheckException>();
     private SymbolTable symbolTable;
 
-    public Unfold(File file, ProofTaskConsumer taskConsumer, SymbolTable symbolTable, BoogieFunctions funcTable) {
+    public Unfold(File file, String theorem, ProofTaskConsumer taskConsumer, SymbolTable symbolTable, BoogieFunctions funcTable) {
         this.file=file;
+        this.theorem = theorem;
         this.taskConsumer = taskConsumer;
         this.symbolTable = symbolTable;
         this.funcTable = funcTable;
@@ -50,7 +52,7 @@ public class Unfold {
         }
 
         Auto auto = new Auto(taskConsumer, symbolTable, funcTable, new HashSet(), new HashMap());
-        auto.check(file, line, pos, leftIn, left, "Checking unfold equivalence");
+        auto.check(file, line, pos, theorem, leftIn, left, "Checking unfold equivalence");
 
     }
 
@@ -0,0 +1,309 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import com.amazon.quivela.checker.CheckException;
+import com.amazon.quivela.checker.execution.ProofTask;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ Checks several tasks that share a header in one Boogie process. The header is the one that is left after pruning, so
+ the merged program has exactly the declarations of the program of each task. The goal procedures of each task are
+ renamed with a prefix that is unique within the batch, and the goals are appended to the shared header.
+ If the batch verifies, all of the tasks are verified. Otherwise, the errors that Boogie reports are mapped back to the
+ tasks by line number. Tasks with no errors are verified, and the rest are checked again on their own so they report
+ their own failures and get their own retries. If an error can't be attributed to a single task, or the batch times out
+ or exceeds its memory or CPU limit, all of the tasks are checked again on their own.
+ */
+public class BoogieBatchProofTask implements ProofTask {
+
+    private static final Pattern GOAL_PROCEDURE = Pattern.compile("(?<=procedure \\{:inline 1\\} |procedure |call internal\\.r[12] := )(left|right|both)(?=\\()");
+    private static final Pattern CHECKED_PROCEDURE = Pattern.compile("^procedure (left|right|both)\\(", Pattern.MULTILINE);
+    private static final Pattern SUMMARY_COUNT = Pattern.compile("(\\d+) (verified|errors?|inconclusives?|time outs?|out of memory|out of resource)");
+    private static final Pattern ERROR_LOCATION = Pattern.compile("^\\S*\\((\\d+),\\d+\\): [Ee]rror", Pattern.MULTILINE);
+
+    private final List<BoogieProofTask> tasks;
+    private volatile ProofTask.Status status = Status.NOT_STARTED;
+    private volatile boolean cancelled = false;
+    private MergedTask mergedTask = null;
+
+    // the first line of each batched goal in the merged program, and the line after the last goal
+    private final List<Integer> goalLines = new ArrayList();
+    private final List<BoogieProofTask> batched = new ArrayList();
+    private final List<BoogieProofTask> rerun = new ArrayList();
+
+    // Checks the merged program. Results are handled by the batch instead of being reported as the result of a task.
+    private class MergedTask extends BoogieProofTask {
+
+        public MergedTask(BoogieProofTask first, String boogieProgram) {
+            super(boogieProgram, "Checking batch", "Batch check failed.", first.getTactic());
+        }
+
+        @Override
+        public ProofTask createHelper(int cores) {
+            // a variant would verify the merged program without completing the tasks in the batch
+            return null;
+        }
+
+        @Override
+        int getMaxAttempts() {
+            // the tasks get their own retries when they are checked on their own
+            return 1;
+        }
+
+        @Override
+        void recordTime(long millis) {
+            // the time of a batch says little about the time of a single task
+        }
+
+        @Override
+        void verified() throws IOException {
+            for(BoogieProofTask curTask : batched) {
+                curTask.completeVerified(this);
+            }
+        }
+
+        @Override
+        void failed(BoogieOutput boogieOut) {
+            attributeErrors(boogieOut);
+        }
+
+        @Override
+        void timedOut() {
+            rerun.addAll(batched);
+        }
+
+        @Override
+        void resourceExhausted() {
+            rerun.addAll(batched);
+        }
+    }
+
+    public BoogieBatchProofTask(List<BoogieProofTask> tasks) {
+        this.tasks = tasks;
+    }
+
+    static String renameGoalProcedures(String goal, String prefix) {
+        return GOAL_PROCEDURE.matcher(goal).replaceAll(prefix + "$1");
+    }
+
+    private static int countLines(String str) {
+        int result = 0;
+        for(int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) == '\n') {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> start(int workerId) {
+        synchronized (this) {
+            if (status != Status.NOT_STARTED) {
+                throw new IllegalStateException("Task already started");
+            }
+            status = Status.RUNNING;
+        }
+
+        // the tasks are looked up in the cache without holding up the dispatcher that started the batch
+        List<CompletableFuture<Boolean>> lookups = new ArrayList();
+        for(BoogieProofTask curTask : tasks) {
+            lookups.add(curTask.lookupCache());
+        }
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).handle((v, ex) -> null)
+                .thenCompose(v -> startMerged(workerId, lookups))
+                .thenCompose(v -> runIndividually(workerId))
+                .whenComplete((v, ex) -> status = Status.COMPLETE);
+    }
+
+    private CompletableFuture<Void> startMerged(int workerId, List<CompletableFuture<Boolean>> lookups) {
+        // tasks that are already cached, or known to fail with --trust-failures, don't need to be part of the merged program
+        for(int i = 0; i < tasks.size(); i++) {
+            BoogieProofTask curTask = tasks.get(i);
+            CompletableFuture<Boolean> lookup = lookups.get(i);
+            if (lookup.isCompletedExceptionally()) {
+                rerun.add(curTask);
+            } else if (lookup.join()) {
+                curTask.completeCached();
+            } else if (!curTask.completeAsKnownFailure()) {
+                batched.add(curTask);
+            }
+        }
+
+        if (cancelled || batched.size() <= 1) {
+            rerun.addAll(batched);
+            return CompletableFuture.completedFuture(null);
+        }
+        String header = batched.get(0).getHeader();
+        StringBuilder program = new StringBuilder(header);
+        int curLine = countLines(header) + 1;
+        for(int i = 0; i < batched.size(); i++) {
+            String goal = renameGoalProcedures(batched.get(i).getGoal(), "batch" + i + ".");
+            goalLines.add(curLine);
+            program.append(goal);
+            curLine += countLines(goal);
+        }
+        goalLines.add(curLine);
+        MergedTask merged = new MergedTask(batched.get(0), program.toString());
+        synchronized (this) {
+            if (cancelled) {
+                rerun.addAll(batched);
+                return CompletableFuture.completedFuture(null);
+            }
+            mergedTask = merged;
+        }
+        // the merged task is started without holding the lock, since it may complete before start returns
+        return merged.start(workerId);
+    }
+
+    // Find the tasks that Boogie reported errors for, and mark the others as verified
+    private void attributeErrors(BoogieOutput boogieOut) {
+        if (boogieOut.isTruncated() || boogieOut.getSummary() == null) {
+            // some errors may be missing from the output
+            rerun.addAll(batched);
+            return;
+        }
+
+        Set<BoogieProofTask> failed = new HashSet();
+        Matcher matcher = ERROR_LOCATION.matcher(boogieOut.getText());
+        while (matcher.find()) {
+            int errorLine = Integer.parseInt(matcher.group(1));
+            int goalIndex = -1;
+            for(int i = 0; i < batched.size(); i++) {
+                if (errorLine >= goalLines.get(i) && errorLine < goalLines.get(i + 1)) {
+                    goalIndex = i;
+                }
+            }
+            if (goalIndex < 0) {
+                // the error is in the shared header
+                rerun.addAll(batched);
+                return;
+            }
+            failed.add(batched.get(goalIndex));
+        }
+
+        if (failed.isEmpty()) {
+            rerun.addAll(batched);
+            return;
+        }
+
+        // a goal with no errors is only verified if Boogie finished checking every procedure, so no procedure timed out
+        // or ran out of resources, and the verified procedures include the goals of all the other tasks
+        int expectedVerified = 0;
+        for(BoogieProofTask curTask : batched) {
+            if (!failed.contains(curTask)) {
+                expectedVerified += countChecked(curTask.getGoal());
+            }
+        }
+        if (!allChecked(boogieOut.getSummary(), expectedVerified)) {
+            rerun.addAll(batched);
+            return;
+        }
+
+        for(BoogieProofTask curTask : batched) {
+            if (failed.contains(curTask)) {
+                rerun.add(curTask);
+            } else {
+                try {
+                    curTask.completeVerified(mergedTask);
+                } catch (IOException ex) {
+                    rerun.add(curTask);
+                }
+            }
+        }
+    }
+
+    // The number of procedures in a goal that Boogie checks on their own, which are the procedures that are not inlined
+    private static int countChecked(String goal) {
+        int result = 0;
+        Matcher matcher = CHECKED_PROCEDURE.matcher(goal);
+        while (matcher.find()) {
+            result++;
+        }
+        return result;
+    }
+
+    // Whether Boogie reports that it verified at least the given number of procedures, and that it didn't give up on any
+    private static boolean allChecked(String summary, int expectedVerified) {
+        int verified = 0;
+        Matcher matcher = SUMMARY_COUNT.matcher(summary);
+        while (matcher.find()) {
+            int count = Integer.parseInt(matcher.group(1));
+            String kind = matcher.group(2);
+            if (kind.equals("verified")) {
+                verified = count;
+            } else if (!kind.startsWith("error") && count > 0) {
+                return false;
+            }
+        }
+        return verified >= expectedVerified;
+    }
+
+    private CompletableFuture<Void> runIndividually(int workerId) {
+        // tasks that the batch did not complete, for example after an unexpected error, are also checked on their own
+        for(BoogieProofTask curTask : batched) {
+            if (curTask.getStatus() == Status.NOT_STARTED && !rerun.contains(curTask)) {
+                rerun.add(curTask);
+            }
+        }
+        CompletableFuture<Void> result = CompletableFuture.completedFuture(null);
+        for(BoogieProofTask curTask : rerun) {
+            result = result.thenCompose(v -> curTask.start(workerId));
+        }
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        MergedTask merged;
+        synchronized (this) {
+            cancelled = true;
+            merged = mergedTask;
+        }
+        if (merged != null) {
+            merged.cancel();
+        }
+        for(BoogieProofTask curTask : tasks) {
+            curTask.cancel();
+        }
+    }
+
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public Optional<CheckException> getException() {
+        // failures are reported by the tasks in the batch
+        return Optional.empty();
+    }
+
+    @Override
+    public String getTaskMessage() {
+        return "Checking batch of " + tasks.size() + " tasks";
+    }
+
+    @Override
+    public double getPriority() {
+        return tasks.get(0).getPriority();
+    }
+
+    @Override
+    public long getMemoryEstimate() {
+        long programLength = tasks.get(0).getHeader().length();
+        for(BoogieProofTask curTask : tasks) {
+            programLength += curTask.getGoal().length();
+        }
+        return BoogieProofTask.estimateMemory(programLength);
+    }
+}
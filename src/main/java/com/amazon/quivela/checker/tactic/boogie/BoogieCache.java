@@ -0,0 +1,44 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ A store of the digests of verified programs. BoogieUtil uses a local file, and a directory or HTTP server that is
+ shared with other checkers when --shared-cache is given.
+ */
+interface BoogieCache {
+
+    boolean contains(String digest) throws IOException;
+
+    // Look up the program with the digest. A cache that may be slow completes the future on another thread.
+    default CompletableFuture<Boolean> lookup(String digest) {
+        try {
+            return CompletableFuture.completedFuture(contains(digest));
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    // Start looking up the program with the digest, for a lookup that will be needed later
+    default void prefetch(String digest) {
+    }
+
+    // Record that the program with the digest verified using the solver configuration, for the obligation. The
+    // configuration and obligation are null if they are not known.
+    void add(String digest, String config, String obligation) throws IOException;
+
+    // The solver configuration that last verified the obligation, or null if it is not known
+    default String getConfig(String obligation) {
+        return null;
+    }
+
+    // Write recorded programs to durable storage
+    default void sync() {
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ The canonical form of a Boogie program, which is hashed to get the key of the program in the cache and the history.
+ Programs that differ only in whitespace, comments, the order of top-level declarations and the numbering of fresh
+ names have the same canonical form, and the canonical form is only used as a key, so it is never given to Boogie.
+ The canonical form is the text of a program that is equivalent to the original: top-level declarations may appear in
+ any order in Boogie, and the fresh names are renamed consistently to other fresh names of the same kind.
+ */
+class BoogieCanonicalizer {
+
+    static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z'~#$^_.?`][\\w'~#$^.?`]*");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern DECL_START = Pattern.compile("^(type|const|function|axiom|var|procedure|implementation)\\b");
+
+    // The kinds of fresh names, and the names they are renamed to. Each kind is renamed to names of the same kind, so
+    // the renamed names can't clash with other names in the program.
+    private static final Pattern[] FRESH_NAMES = {
+            Pattern.compile("internal\\.expr\\d+"),
+            Pattern.compile("internal\\.cls\\d+"),
+            Pattern.compile("internal\\.tmp\\d+"),
+            Pattern.compile("[\\w'~#$^.?`]+\\.proc\\.\\d+")
+    };
+    private static final String[] CANONICAL_NAMES = {
+            "internal.expr",
+            "internal.cls",
+            "internal.tmp",
+            "internal.proc."
+    };
+
+    // The declarations of the canonical form, which is the declarations separated by newlines
+    static List<String> canonicalDecls(String program) {
+        List<String> decls = new ArrayList();
+        for(String curDecl : splitDecls(program)) {
+            String normalized = normalize(curDecl);
+            if (!normalized.isEmpty()) {
+                decls.add(normalized);
+            }
+        }
+
+        // sort on the text without fresh names, so the order doesn't depend on how they are numbered
+        Map<String, String> masked = new HashMap();
+        for(String curDecl : decls) {
+            masked.put(curDecl, maskFreshNames(curDecl));
+        }
+        decls.sort(Comparator.comparing(masked::get));
+        renameFreshNames(decls);
+
+        // declarations that differ only in fresh names are ordered by their new names
+        Collections.sort(decls);
+        return decls;
+    }
+
+    /*
+     Split a program into its top-level declarations. A declaration starts with a keyword at the start of a line that is
+     not inside the braces of a procedure body, and the comments and blank lines that follow a declaration belong to it.
+     The declarations are whole lines of the program, so joining them with newlines gives the program.
+     */
+    static List<String> splitDecls(String program) {
+        List<String> result = new ArrayList();
+        StringBuilder curDecl = null;
+        int depth = 0;
+        for(String curLine : program.split("\n", -1)) {
+            String code = stripComment(curLine).trim();
+            if (curDecl != null && depth == 0 && DECL_START.matcher(code).find()) {
+                result.add(curDecl.toString());
+                curDecl = null;
+            }
+            if (curDecl == null) {
+                curDecl = new StringBuilder(curLine);
+            } else {
+                curDecl.append("\n").append(curLine);
+            }
+            for(char c : code.toCharArray()) {
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                }
+            }
+        }
+        result.add(curDecl.toString());
+        return result;
+    }
+
+    // A declaration without comments, on one line, with a single space wherever it had whitespace
+    static String normalize(String decl) {
+        StringBuilder result = new StringBuilder();
+        for(String curLine : decl.split("\n")) {
+            String code = stripComment(curLine).trim();
+            if (!code.isEmpty()) {
+                if (result.length() > 0) {
+                    result.append(" ");
+                }
+                result.append(WHITESPACE.matcher(code).replaceAll(" "));
+            }
+        }
+        return result.toString();
+    }
+
+    private static String stripComment(String line) {
+        int commentStart = line.indexOf("//");
+        return commentStart < 0 ? line : line.substring(0, commentStart);
+    }
+
+    private static int freshNameKind(String identifier) {
+        for(int i = 0; i < FRESH_NAMES.length; i++) {
+            if (FRESH_NAMES[i].matcher(identifier).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String maskFreshNames(String text) {
+        Matcher matcher = IDENTIFIER.matcher(text);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            int kind = freshNameKind(matcher.group());
+            matcher.appendReplacement(result, kind < 0 ? "$0" : Matcher.quoteReplacement(CANONICAL_NAMES[kind]));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    // Number the fresh names of each kind in the order in which they first appear in the declarations
+    private static void renameFreshNames(List<String> decls) {
+        List<Map<String, String>> renamings = new ArrayList();
+        for(int i = 0; i < FRESH_NAMES.length; i++) {
+            renamings.add(new HashMap());
+        }
+
+        for(int i = 0; i < decls.size(); i++) {
+            Matcher matcher = IDENTIFIER.matcher(decls.get(i));
+            StringBuilder result = new StringBuilder();
+            while (matcher.find()) {
+                String identifier = matcher.group();
+                int kind = freshNameKind(identifier);
+                if (kind < 0) {
+                    matcher.appendReplacement(result, "$0");
+                    continue;
+                }
+                Map<String, String> renaming = renamings.get(kind);
+                String newName = renaming.get(identifier);
+                if (newName == null) {
+                    newName = CANONICAL_NAMES[kind] + renaming.size();
+                    renaming.put(identifier, newName);
+                }
+                matcher.appendReplacement(result, Matcher.quoteReplacement(newName));
+            }
+            matcher.appendTail(result);
+            decls.set(i, result.toString());
+        }
+    }
+}
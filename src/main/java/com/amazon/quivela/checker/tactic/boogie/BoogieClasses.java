@@ -9,13 +9,13 @@ import com.amazon.quivela.checker.Util;
 import com.amazon.quivela.parser.analysis.AnalysisAdapter;
 import com.amazon.quivela.parser.node.*;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class BoogieClasses {
 
-    private Map<String, String> classesByDef = new HashMap();
-    private Map<String, String> classesById = new HashMap();
+    private Map<String, String> classesByDef = new LinkedHashMap();
+    private Map<String, String> classesById = new LinkedHashMap();
 
     private static class NewClassConverter extends AnalysisAdapter {
 
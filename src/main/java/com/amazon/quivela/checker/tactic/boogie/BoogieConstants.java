@@ -12,11 +12,11 @@ import java.util.*;
 
 public class BoogieConstants {
 
-    private Set<String> fields = new HashSet();
-    private Set<String> checkpoints = new HashSet();
-    private Map<String, String> methods = new HashMap();
-    private Set<String> methodNames = new HashSet();
-    private Map<String, String> exprs = new HashMap();
+    private Set<String> fields = new LinkedHashSet();
+    private Set<String> checkpoints = new LinkedHashSet();
+    private Map<String, String> methods = new LinkedHashMap();
+    private Set<String> methodNames = new LinkedHashSet();
+    private Map<String, String> exprs = new LinkedHashMap();
     private int methodProcIdCtr = 0;
 
     public void addFields(Collection<String> newFields, PrettyPrintStream out) {
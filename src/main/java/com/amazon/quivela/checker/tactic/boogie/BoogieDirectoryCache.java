@@ -0,0 +1,51 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/*
+ A cache of verified programs in a directory that many checkers can share, for example on a volume that is mounted by
+ several machines. Each verified program has a file that is named by the hex digest of the program, in a subdirectory
+ named by the first two digits of the digest, and that holds the solver configuration and the proof obligation. A file
+ is written under a temporary name and then renamed, so other checkers never see a partial file.
+ */
+class BoogieDirectoryCache implements BoogieCache {
+
+    private final Path dir;
+
+    BoogieDirectoryCache(String dirname) {
+        this.dir = Paths.get(dirname);
+    }
+
+    @Override
+    public boolean contains(String digest) {
+        return Files.exists(getPath(digest));
+    }
+
+    @Override
+    public void add(String digest, String config, String obligation) throws IOException {
+        Path path = getPath(digest);
+        if (Files.exists(path)) {
+            return;
+        }
+        Files.createDirectories(path.getParent());
+        Path tmpPath = Files.createTempFile(path.getParent(), ".", ".tmp");
+        try {
+            Files.write(tmpPath, (config + "\t" + obligation + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    private Path getPath(String digest) {
+        String hex = BoogieUtil.toHex(digest);
+        return dir.resolve(hex.substring(0, 2)).resolve(hex);
+    }
+}
@@ -29,7 +29,7 @@ public class BoogieExprConverter extends DepthFirstAdapter {
     private Deque<Value> value = new ArrayDeque();
     private Map<String, String> temporaries;
     private Set<String> letDecls = new HashSet<String>();
-    private Map<String, Integer> invokedMethods = new HashMap();
+    private Map<String, Integer> invokedMethods = new LinkedHashMap();
     private Map<String, Checkpoint> checkpoints = new HashMap();
     private String lastSplitHeapId = null;
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/*
+ The programs that failed to verify, in a local directory. Each failed program has a file that is named by the hex
+ digest of the program. The first line of the file is the solver configuration and the time spent in the solver,
+ separated by a tab, the second line is the error that was reported, and the rest is the output of Boogie. A program
+ is removed when it verifies. Files are written under a temporary name and then renamed, so other checkers never see a
+ partial file.
+ */
+class BoogieFailureCache {
+
+    static class Failure {
+        final String config;
+        final long solverMillis;
+        final String message;
+        final String output;
+
+        Failure(String config, long solverMillis, String message, String output) {
+            this.config = config;
+            this.solverMillis = solverMillis;
+            this.message = message;
+            this.output = output;
+        }
+    }
+
+    private final Path dir;
+
+    BoogieFailureCache(String dirname) {
+        this.dir = Paths.get(dirname);
+    }
+
+    boolean contains(String digest) {
+        return Files.exists(getPath(digest));
+    }
+
+    // The failure of the program, or null if it did not fail or the file can't be read
+    Failure get(String digest) {
+        try {
+            String text = new String(Files.readAllBytes(getPath(digest)), StandardCharsets.UTF_8);
+            String[] parts = text.split("\n", 3);
+            String[] fields = parts[0].split("\t", -1);
+            if (parts.length < 3 || fields.length != 2) {
+                return null;
+            }
+            return new Failure(fields[0], Long.parseLong(fields[1]), parts[1], parts[2]);
+        } catch (IOException | NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    void add(String digest, Failure failure) throws IOException {
+        Files.createDirectories(dir);
+        Path tmpPath = Files.createTempFile(dir, ".", ".tmp");
+        try {
+            String text = failure.config + "\t" + failure.solverMillis + "\n" + failure.message.replace('\n', ' ') + "\n" + failure.output;
+            Files.write(tmpPath, text.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpPath, getPath(digest), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    void remove(String digest) throws IOException {
+        Files.deleteIfExists(getPath(digest));
+    }
+
+    private Path getPath(String digest) {
+        return dir.resolve(BoogieUtil.toHex(digest));
+    }
+}
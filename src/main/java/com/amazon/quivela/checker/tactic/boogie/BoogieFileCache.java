@@ -0,0 +1,245 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ A cache of verified programs in a local file. Each line of the file is the digest of a verified program. The digest
+ may be followed by the solver configuration that verified the program and the proof obligation it was checked for,
+ separated by tabs. Later lines replace earlier lines for the same digest.
+ The file is an append-only log, so recording a verified program writes one line. Appends are synced to disk at most
+ once per second, and when the checker exits. Several checkers may share the file: they append and compact while
+ holding a lock on a separate lock file, and a lookup that misses first reads the lines that were appended by other
+ checkers. When a checker loads a file that has many more lines than programs, and again after every
+ COMPACTION_CHECK_APPENDS appends, it rewrites the file with one line per program and atomically replaces the old file.
+ */
+class BoogieFileCache implements BoogieCache {
+
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+    // the file is compacted when it has at least this many lines, and more than twice as many lines as programs
+    private static final int COMPACTION_MIN_LINES = 1000;
+    // the number of appends after which a long running checker checks whether the file should be compacted
+    private static final int COMPACTION_CHECK_APPENDS = 1000;
+
+    private final Path path;
+    private final Path lockPath;
+    // in the order the entries were added, so the latest configuration for an obligation is loaded last
+    private final Map<String, String> entries = new LinkedHashMap();
+    // the solver configuration that last verified each obligation
+    private final Map<String, String> configs = new HashMap();
+    private int lines = 0;
+    private int appendsSinceCompactionCheck = 0;
+    // the file that was read, and the number of bytes of it that were read
+    private Object readFileKey = null;
+    private long readOffset = 0;
+    // the file that is appended to
+    private FileChannel channel = null;
+    private Object channelFileKey = null;
+    private FileChannel lockChannel = null;
+    private boolean syncScheduled = false;
+
+    BoogieFileCache(String filename) {
+        this.path = Paths.get(filename);
+        this.lockPath = Paths.get(filename + ".lock");
+    }
+
+    synchronized void load() throws IOException {
+        readNewLines();
+        if (lines >= COMPACTION_MIN_LINES && lines > 2 * entries.size()) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(String digest) throws IOException {
+        if (entries.containsKey(digest)) {
+            return true;
+        }
+        readNewLines();
+        return entries.containsKey(digest);
+    }
+
+    @Override
+    public synchronized String getConfig(String obligation) {
+        return configs.get(obligation);
+    }
+
+    @Override
+    public synchronized void add(String digest, String config, String obligation) throws IOException {
+        String entry = obligation == null ? digest : digest + "\t" + config + "\t" + obligation;
+        addEntry(entry);
+
+        FileLock lock = getLockChannel().lock();
+        try {
+            FileChannel out = getAppendChannel();
+            long size = out.size();
+            String text = entry + "\n";
+            if (size > 0 && !endsWithNewline(out, size)) {
+                // a checker that crashed while appending left a partial line
+                text = "\n" + text;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                size += out.write(buf, size);
+            }
+        } finally {
+            lock.release();
+        }
+        scheduleSync();
+
+        // other checkers append to the file too, so the lines are counted by reading the file
+        appendsSinceCompactionCheck++;
+        if (appendsSinceCompactionCheck >= COMPACTION_CHECK_APPENDS) {
+            appendsSinceCompactionCheck = 0;
+            load();
+        }
+    }
+
+    // Write appended lines to disk
+    @Override
+    public synchronized void sync() {
+        syncScheduled = false;
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (IOException ex) {
+                System.err.println("Unable to sync cache file " + path + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void scheduleSync() {
+        if (!syncScheduled) {
+            syncScheduled = true;
+            CompletableFuture.delayedExecutor(SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS).execute(this::sync);
+        }
+    }
+
+    private void addEntry(String entry) {
+        String[] fields = entry.split("\t");
+        if (fields[0].isEmpty()) {
+            return;
+        }
+        entries.remove(fields[0]);
+        entries.put(fields[0], entry);
+        if (fields.length == 3) {
+            configs.put(fields[2], fields[1]);
+        }
+    }
+
+    private static Object getFileKey(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    // Read the complete lines that were added to the file since it was last read
+    private void readNewLines() throws IOException {
+        Object fileKey = getFileKey(path);
+        if (fileKey == null) {
+            return;
+        }
+        if (!fileKey.equals(readFileKey)) {
+            // the file was replaced by compaction, which keeps all of the entries, so it is read again from the start
+            readFileKey = fileKey;
+            readOffset = 0;
+            lines = 0;
+        }
+
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size <= readOffset) {
+                return;
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int)(size - readOffset));
+            while (buf.hasRemaining()) {
+                if (in.read(buf, readOffset + buf.position()) < 0) {
+                    break;
+                }
+            }
+            String text = new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+            // a partial line at the end is read once it is complete
+            int end = text.lastIndexOf('\n') + 1;
+            if (end == 0) {
+                return;
+            }
+            for(String curLine : text.substring(0, end).split("\n")) {
+                addEntry(curLine);
+                lines++;
+            }
+            readOffset += text.substring(0, end).getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    private FileChannel getLockChannel() throws IOException {
+        if (lockChannel == null) {
+            lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return lockChannel;
+    }
+
+    // The channel to append to, which is reopened if the file was replaced by compaction. Must hold the lock.
+    private FileChannel getAppendChannel() throws IOException {
+        Object fileKey = getFileKey(path);
+        if (channel == null || fileKey == null || !fileKey.equals(channelFileKey)) {
+            if (channel != null) {
+                channel.close();
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channelFileKey = getFileKey(path);
+        }
+        return channel;
+    }
+
+    private static boolean endsWithNewline(FileChannel channel, long size) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) == '\n';
+    }
+
+    // Replace the file with one that has one line for each program
+    private void compact() throws IOException {
+        FileLock lock = getLockChannel().lock();
+        try {
+            // include the lines that other checkers appended
+            readNewLines();
+
+            Path tmpPath = path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+            StringBuilder text = new StringBuilder();
+            for(String curEntry : entries.values()) {
+                text.append(curEntry).append("\n");
+            }
+            try (FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                out.force(true);
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            readFileKey = getFileKey(path);
+            readOffset = Files.size(path);
+            lines = entries.size();
+        } finally {
+            lock.release();
+        }
+    }
+}
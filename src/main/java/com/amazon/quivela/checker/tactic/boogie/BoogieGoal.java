@@ -0,0 +1,89 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ One postcondition or assertion of a set of Boogie procedures, together with a copy of the procedures in which only
+ this goal is checked. The other goals are assumed: postconditions become free postconditions, and assertions become
+ assumptions. Every goal is checked in its own copy, so the copies together check the same as the original procedures.
+ */
+public class BoogieGoal {
+
+    private static final String ENSURES = "ensures ";
+    private static final String ASSERT = "assert ";
+
+    private final String goal;
+    private final String procedures;
+
+    public BoogieGoal(String goal, String procedures) {
+        this.goal = goal;
+        this.procedures = procedures;
+    }
+
+    public String getGoal() {
+        return goal;
+    }
+
+    public String getProcedures() {
+        return procedures;
+    }
+
+    // Split the procedures into one copy for each goal. Goals are written on lines of their own by the tactics.
+    public static List<BoogieGoal> split(String procedures) {
+        String[] lines = procedures.split("\n", -1);
+        List<Integer> goalLines = new ArrayList();
+        for(int i = 0; i < lines.length; i++) {
+            if (isGoal(lines[i])) {
+                goalLines.add(i);
+            }
+        }
+
+        List<BoogieGoal> result = new ArrayList();
+        if (goalLines.size() <= 1) {
+            result.add(new BoogieGoal(null, procedures));
+            return result;
+        }
+
+        for(int curGoalLine : goalLines) {
+            StringBuilder copy = new StringBuilder();
+            for(int i = 0; i < lines.length; i++) {
+                if (i > 0) {
+                    copy.append("\n");
+                }
+                if (i != curGoalLine && isGoal(lines[i])) {
+                    copy.append(assume(lines[i]));
+                } else {
+                    copy.append(lines[i]);
+                }
+            }
+            // the body of the procedure may start on the line of its last postcondition
+            String goal = lines[curGoalLine].trim();
+            if (goal.endsWith("{")) {
+                goal = goal.substring(0, goal.length() - 1).trim();
+            }
+            result.add(new BoogieGoal(goal, copy.toString()));
+        }
+        return result;
+    }
+
+    private static boolean isGoal(String line) {
+        String trimmed = line.trim();
+        return trimmed.startsWith(ENSURES) || trimmed.startsWith(ASSERT);
+    }
+
+    private static String assume(String line) {
+        int start = line.indexOf(line.trim());
+        String indent = line.substring(0, start);
+        String goal = line.substring(start);
+        if (goal.startsWith(ENSURES)) {
+            return indent + "free " + goal;
+        }
+        return indent + "assume " + goal.substring(ASSERT.length());
+    }
+}
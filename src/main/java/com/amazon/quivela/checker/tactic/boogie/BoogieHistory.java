@@ -0,0 +1,157 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ The measured solve time of each Boogie program, keyed by the digest of the program. The history is kept in a local file
+ so that later runs can start the longest proof tasks first. The time of a program with no history is estimated from its
+ size, using the average time per byte of the programs in the history that were produced by the same tactic.
+ Recording a time appends a line to the file. When a checker loads a file that has many more lines than programs, it
+ keeps the latest MAX_ENTRIES programs and rewrites the file with one line per program. The history is only an
+ estimate, so a line that another checker appends while the file is rewritten may be lost.
+ */
+public class BoogieHistory {
+
+    // Milliseconds per program byte for a tactic with no history. These keep bisimulations ahead of auto, and auto
+    // ahead of bounds checks.
+    private static final Map<String, Double> DEFAULT_RATES = new HashMap();
+    static {
+        DEFAULT_RATES.put("bisim", 0.1);
+        DEFAULT_RATES.put("auto", 0.05);
+        DEFAULT_RATES.put("bounds", 0.02);
+    }
+    private static final double DEFAULT_RATE = 0.05;
+
+    // the number of programs that are kept when the file is compacted
+    private static final int MAX_ENTRIES = 100000;
+    // the file is compacted when it has at least this many lines, and more than twice as many lines as programs
+    private static final int COMPACTION_MIN_LINES = 1000;
+
+    private static class Entry {
+
+        private final String tactic;
+        private final long programLength;
+        private final long millis;
+
+        public Entry(String tactic, long programLength, long millis) {
+            this.tactic = tactic;
+            this.programLength = programLength;
+            this.millis = millis;
+        }
+    }
+
+    // total time and program length of the entries for each tactic
+    private static class TacticTotals {
+        private long millis = 0;
+        private long programLength = 0;
+    }
+
+    // in the order the programs were last recorded
+    private static Map<String, Entry> entries = null;
+    private static final Map<String, TacticTotals> tacticTotals = new HashMap();
+
+    private static String getHistoryFilename() {
+        return "quivela.history.boogie";
+    }
+
+    private static void addEntry(String digest, Entry entry) {
+        Entry oldEntry = entries.remove(digest);
+        if (oldEntry != null) {
+            removeTotals(oldEntry);
+        }
+        entries.put(digest, entry);
+        TacticTotals totals = tacticTotals.computeIfAbsent(entry.tactic, t -> new TacticTotals());
+        totals.millis += entry.millis;
+        totals.programLength += entry.programLength;
+    }
+
+    private static void removeTotals(Entry entry) {
+        TacticTotals totals = tacticTotals.get(entry.tactic);
+        totals.millis -= entry.millis;
+        totals.programLength -= entry.programLength;
+    }
+
+    // Each line is: digest tactic programLength millis. Later lines replace earlier lines for the same digest.
+    private static Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap();
+            int lines = 0;
+            try (BufferedReader reader = new BufferedReader(new FileReader(getHistoryFilename()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    String[] fields = line.split(" ");
+                    if (fields.length == 4) {
+                        addEntry(fields[0], new Entry(fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                    }
+                }
+            } catch (FileNotFoundException ex) {
+                // start with empty history
+            } catch (IOException | NumberFormatException ex) {
+                System.err.println("Ignoring unreadable history file " + getHistoryFilename() + ": " + ex.getMessage());
+            }
+            if (lines >= COMPACTION_MIN_LINES && lines > 2 * Math.min(entries.size(), MAX_ENTRIES)) {
+                compact();
+            }
+        }
+        return entries;
+    }
+
+    // Keep the latest programs, and replace the file with one that has one line for each of them
+    private static void compact() {
+        Iterator<Entry> oldest = entries.values().iterator();
+        for(int i = entries.size(); i > MAX_ENTRIES; i--) {
+            removeTotals(oldest.next());
+            oldest.remove();
+        }
+
+        Path path = Paths.get(getHistoryFilename());
+        Path tmpPath = path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (PrintWriter fileOut = new PrintWriter(Files.newBufferedWriter(tmpPath))) {
+                for(Map.Entry<String, Entry> curEntry : entries.entrySet()) {
+                    Entry entry = curEntry.getValue();
+                    fileOut.println(curEntry.getKey() + " " + entry.tactic + " " + entry.programLength + " " + entry.millis);
+                }
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("Unable to compact history file " + getHistoryFilename() + ": " + ex.getMessage());
+        }
+    }
+
+    // Expected time in milliseconds to check a program
+    public static synchronized long expectedMillis(String tactic, String digest, long programLength) {
+        Entry entry = getEntries().get(digest);
+        if (entry != null) {
+            return entry.millis;
+        }
+
+        double rate = DEFAULT_RATES.getOrDefault(tactic, DEFAULT_RATE);
+        TacticTotals totals = tacticTotals.get(tactic);
+        if (totals != null && totals.programLength > 0) {
+            rate = (double)totals.millis / totals.programLength;
+        }
+        return (long)(rate * programLength);
+    }
+
+    public static synchronized void record(String tactic, String digest, long programLength, long millis) {
+        getEntries();
+        addEntry(digest, new Entry(tactic, programLength, millis));
+        try (PrintWriter fileOut = new PrintWriter(new FileWriter(getHistoryFilename(), true))) {
+            fileOut.println(digest + " " + tactic + " " + programLength + " " + millis);
+        } catch (IOException ex) {
+            System.err.println("Unable to write history file " + getHistoryFilename() + ": " + ex.getMessage());
+        }
+    }
+}
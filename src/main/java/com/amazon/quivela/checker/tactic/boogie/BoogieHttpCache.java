@@ -0,0 +1,66 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/*
+ A cache of verified programs on an HTTP server. The program with hex digest d is verified if GET <url>/d succeeds, and
+ a verified program is recorded with PUT <url>/d, with the solver configuration and the proof obligation as the body.
+ Any server that stores files under the request path can be used, and a server that doesn't have a program must
+ answer 404.
+ */
+class BoogieHttpCache implements BoogieCache {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final String url;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+    BoogieHttpCache(String url) {
+        this.url = url.endsWith("/") ? url : url + "/";
+    }
+
+    @Override
+    public boolean contains(String digest) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(getUri(digest)).timeout(TIMEOUT).GET().build();
+        int status = send(request).statusCode();
+        if (status == 404) {
+            return false;
+        } else if (status / 100 != 2) {
+            throw new IOException("GET " + request.uri() + " returned status " + status);
+        }
+        return true;
+    }
+
+    @Override
+    public void add(String digest, String config, String obligation) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(getUri(digest)).timeout(TIMEOUT)
+                .PUT(HttpRequest.BodyPublishers.ofString(config + "\t" + obligation + "\n")).build();
+        int status = send(request).statusCode();
+        if (status / 100 != 2) {
+            throw new IOException("PUT " + request.uri() + " returned status " + status);
+        }
+    }
+
+    private URI getUri(String digest) {
+        return URI.create(url + BoogieUtil.toHex(digest));
+    }
+
+    private HttpResponse<Void> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+}
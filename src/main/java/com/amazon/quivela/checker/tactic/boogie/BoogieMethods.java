@@ -6,12 +6,12 @@
 package com.amazon.quivela.checker.tactic.boogie;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class BoogieMethods {
 
-    private Map<String, String> methodsMap = new HashMap();
+    private Map<String, String> methodsMap = new LinkedHashMap();
 
     public String getBoogieProcName(String methodName) {
         return methodsMap.get(methodName);
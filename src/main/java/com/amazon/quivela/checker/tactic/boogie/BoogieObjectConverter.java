@@ -28,7 +28,7 @@ public class BoogieObjectConverter extends AnalysisAdapter {
     private List<String> fields = new ArrayList<String>();
     private Map<String, List<String>> methodSigs = new HashMap();
     private Map<String, AMethodDef> methodDefs = new HashMap();
-    private Map<String, Integer> invokedMethods = new HashMap();
+    private Map<String, Integer> invokedMethods = new LinkedHashMap();
     private Map<String, Checkpoint> checkpoints = new HashMap();
 
     public BoogieObjectConverter(SymbolTable symbolTable, BoogieFunctions functions, BoogieMethods methods, BoogieClasses classes, BoogieConstants constants, String name, PrettyPrintStream out, String classId) {
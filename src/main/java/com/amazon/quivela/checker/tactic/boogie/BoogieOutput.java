@@ -0,0 +1,94 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+ The output of a Boogie process. Only the last lines of the output, and the start of each long line, are kept, so a
+ verbose process uses a bounded amount of memory. The summary line that Boogie prints when it finishes is recognized as the output is read, so it is available
+ even if it is followed by more output than the tail holds.
+ */
+public class BoogieOutput {
+
+    private static final int MAX_TAIL_CHARS = 64 * 1024;
+    private static final int MAX_LINE_CHARS = 4 * 1024;
+    private static final int READ_CHARS = 8 * 1024;
+
+    private final Deque<String> tail = new ArrayDeque();
+    private int tailChars = 0;
+    private int droppedLines = 0;
+    private String summary = null;
+
+    // Read lines until the end of the stream. The characters of a line past the limit are dropped as they are read, so
+    // a line without an end is never held in memory.
+    public void read(InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in);
+        char[] buf = new char[READ_CHARS];
+        StringBuilder line = new StringBuilder();
+        boolean lineTruncated = false;
+        int count;
+        while ((count = reader.read(buf)) >= 0) {
+            for(int i = 0; i < count; i++) {
+                char c = buf[i];
+                if (c == '\n') {
+                    addLine(lineTruncated ? line + "..." : line.toString());
+                    line.setLength(0);
+                    lineTruncated = false;
+                } else if (c == '\r') {
+                    // Boogie ends lines with \r\n on Windows
+                } else if (line.length() < MAX_LINE_CHARS) {
+                    line.append(c);
+                } else {
+                    lineTruncated = true;
+                }
+            }
+        }
+        if (line.length() > 0 || lineTruncated) {
+            addLine(lineTruncated ? line + "..." : line.toString());
+        }
+    }
+
+    private synchronized void addLine(String line) {
+        if (BoogieUtil.boogieOutFinished(line)) {
+            summary = line;
+        }
+
+        tail.addLast(line);
+        tailChars += line.length();
+        while (tailChars > MAX_TAIL_CHARS) {
+            tailChars -= tail.removeFirst().length();
+            droppedLines++;
+        }
+    }
+
+    // The line that Boogie prints when it finishes, or null if it did not finish
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    // Some lines of output were dropped because the output was too long
+    public synchronized boolean isTruncated() {
+        return droppedLines > 0;
+    }
+
+    public synchronized String getText() {
+        StringBuilder result = new StringBuilder();
+        if (droppedLines > 0) {
+            result.append("... (" + droppedLines + " lines omitted)\n");
+        }
+        for(String curLine : tail) {
+            result.append(curLine);
+            result.append('\n');
+        }
+        return result.toString();
+    }
+}
@@ -5,106 +5,764 @@
 
 package com.amazon.quivela.checker.tactic.boogie;
 
+import com.amazon.quivela.Settings;
 import com.amazon.quivela.checker.CheckException;
+import com.amazon.quivela.checker.event.CacheLookupEvent;
+import com.amazon.quivela.checker.event.SolverEvent;
+import com.amazon.quivela.checker.execution.AssistedProofTask;
+import com.amazon.quivela.checker.execution.BatchableProofTask;
+import com.amazon.quivela.checker.execution.IdentifiedProofTask;
+import com.amazon.quivela.checker.execution.MeasuredProofTask;
 import com.amazon.quivela.checker.execution.ProofTask;
+import com.amazon.quivela.checker.execution.ProofTaskMetrics;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-public class BoogieProofTask implements ProofTask {
+/*
+ Checks a Boogie program. In portfolio mode, idle workers check the same program as variants of the task with other
+ solver configurations. The first configuration that verifies the program wins, the others are killed, and the winning
+ configuration is recorded in the cache and tried first the next time the obligation is checked.
+ When several workers are idle near the end of a run, a variant may instead check the program with several solver
+ cores, using the cores of the idle workers.
+ */
+public class BoogieProofTask implements BatchableProofTask, AssistedProofTask, IdentifiedProofTask, MeasuredProofTask {
+
+    // Rough model of the memory used by Boogie and the solver: a fixed cost for the processes,
+    // plus a cost that grows with the size of the program.
+    private static final long BASE_MEMORY_ESTIMATE = 256L * 1024 * 1024;
+    private static final long MEMORY_PER_PROGRAM_BYTE = 256;
+
+    // interval at which the peak memory of a running Boogie process is sampled when metrics are recorded
+    private static final long RSS_SAMPLE_MILLIS = 200;
+
+    // time and resource limits are multiplied by this factor on each retry. The memory and CPU limits protect the host,
+    // so they stay fixed.
+    private static final int LIMIT_ESCALATION_FACTOR = 2;
+
+    // solver configurations that are raced in portfolio mode, as Boogie options separated by spaces
+    private static final List<String> PORTFOLIO_CONFIGS = Arrays.asList(
+            "",
+            "/randomSeed:1",
+            "/proverOpt:O:smt.arith.solver=2",
+            "/randomSeed:2 /proverOpt:O:smt.arith.solver=6");
+
+    private static final Pattern RANDOM_SEED = Pattern.compile("/randomSeed:(\\d+)");
+
+    private enum Outcome {
+        VERIFIED,
+        FAILED,
+        TIMED_OUT,
+        RESOURCE_EXHAUSTED
+    }
 
     private final File file;
     private final int line;
     private final int pos;
+    // the program without the declarations that its obligations don't depend on, as selected by --prune
     private final String boogieProgram;
+    // the declarations shared with other tasks, as kept by pruning, and the goal procedures, when the task can be batched
+    private final String header;
+    private final String goal;
     private final String message;
     private final String failMessage;
-    private ProofTask.Status status = Status.NOT_STARTED;
-    InputStream procInputStream = null;
+    private volatile ProofTask.Status status = Status.NOT_STARTED;
     Process boogieProcess = null;
-    CheckException exception = null;
-    StringBuffer procOutBuf = new StringBuffer();
-    byte[] cbuf = new byte[1024];
+    volatile CheckException exception = null;
+    private volatile boolean cancelled = false;
+    private volatile BoogieOutput output = new BoogieOutput();
+    // output of the failed attempt, which is printed if no portfolio variant verifies the program
+    private BoogieOutput failureOutput = null;
     private int workerId = 0;
-    private double priority;
+    // the tactic that produced the program, which is used to estimate the time to check it
+    private final String tactic;
+    // the key of the program in the cache and the history, and of duplicate programs in a run. It is computed once.
+    private final String digest;
+    private final long expectedMillis;
+    // the program failed in an earlier run, so the task is started after the other tasks
+    private final boolean knownFailure;
+    private long attemptStartTime;
+    // the program file of the latest attempt, which is kept if the task fails
+    private File boogieFile = null;
+    private volatile int attempt = 1;
+    private volatile boolean timedOut = false;
+    // metrics of all attempts, or of the batch that verified the task
+    private String cacheResult = ProofTaskMetrics.CACHE_MISS;
+    private long solverMillis = 0;
+    private volatile long peakRssKb = 0;
+
+    private String config = "";
+    // number of cores that Boogie uses to check the parts of the verification conditions of the program
+    private int cores = 1;
+    private boolean multiCoreVariant = false;
+    // the task that this task is a portfolio variant of, or null
+    private final BoogieProofTask portfolioParent;
+    private final List<BoogieProofTask> variants = new ArrayList();
+    // completes when this task is complete, so the task this is a variant of can wait for it
+    private final CompletableFuture<Void> done = new CompletableFuture();
+    private volatile boolean solvedByVariant = false;
+    private boolean finished = false;
+
+    public BoogieProofTask(File file, int line, int pos, String boogieProgram, String message, String failMessage, String tactic) {
+        this(file, line, pos, boogieProgram, null, null, message, failMessage, tactic);
+    }
+
+    // The program is the header followed by the goal, which must only declare the procedures left, right and both.
+    // Such a task can be checked in a batch with other tasks that have the same header.
+    public BoogieProofTask(File file, int line, int pos, String header, String goal, String message, String failMessage, String tactic) {
+        this(file, line, pos, header + goal, header, goal, message, failMessage, tactic);
+    }
 
-    public BoogieProofTask(File file, int line, int pos, String boogieProgram, String message, String failMessage, double priority) {
+    private BoogieProofTask(File file, int line, int pos, String boogieProgram, String header, String goal, String message, String failMessage, String tactic) {
         this.file = file;
         this.line = line;
         this.pos = pos;
+        this.boogieProgram = Settings.prune == Settings.PruneMode.NONE ? boogieProgram : BoogiePruner.prune(boogieProgram, Settings.prune == Settings.PruneMode.AGGRESSIVE);
+        // A batch is checked with the header of its tasks, and each task is recorded in the cache as if its own program
+        // verified. So tasks are only batched when pruning keeps the same header for all of them, and the task can't be
+        // batched if pruning removed part of its goal.
+        if (header != null && this.boogieProgram.endsWith(goal)) {
+            this.header = this.boogieProgram.substring(0, this.boogieProgram.length() - goal.length());
+        } else {
+            this.header = null;
+        }
+        this.goal = this.header != null ? goal : null;
+        this.message = message;
+        this.failMessage = failMessage;
+        this.tactic = tactic;
+        this.digest = BoogieUtil.digest(this.boogieProgram);
+        this.expectedMillis = BoogieHistory.expectedMillis(tactic, digest, this.boogieProgram.length());
+        this.knownFailure = BoogieUtil.isKnownFailure(digest);
+        this.portfolioParent = null;
+        // the shared cache is looked up while the task waits in the queue
+        BoogieUtil.prefetch(digest);
+    }
+
+    // A task that checks the program as it is, without pruning it, and that doesn't look it up or record it in the
+    // cache, the history or the failures. It is used for the merged program of a batch, which is never checked again.
+    BoogieProofTask(String boogieProgram, String message, String failMessage, String tactic) {
+        this.file = new File("batch");
+        this.line = 0;
+        this.pos = 0;
         this.boogieProgram = boogieProgram;
+        this.header = null;
+        this.goal = null;
         this.message = message;
         this.failMessage = failMessage;
-        this.priority = priority;
+        this.tactic = tactic;
+        this.digest = null;
+        this.expectedMillis = 0;
+        this.knownFailure = false;
+        this.portfolioParent = null;
     }
 
+    // A portfolio variant of a task, which checks the same program with another solver configuration or more cores
+    private BoogieProofTask(BoogieProofTask parent, String config, int cores) {
+        this.file = parent.file;
+        this.line = parent.line;
+        this.pos = parent.pos;
+        this.boogieProgram = parent.boogieProgram;
+        this.header = null;
+        this.goal = null;
+        this.message = parent.message;
+        this.failMessage = parent.failMessage;
+        this.tactic = parent.tactic;
+        this.digest = parent.digest;
+        this.expectedMillis = parent.expectedMillis;
+        this.knownFailure = parent.knownFailure;
+        this.portfolioParent = parent;
+        this.config = config;
+        this.cores = cores;
+    }
+
+    /*
+     The futures of a task are never completed while the task holds its own lock, since the queue cancels running tasks
+     when a task completes, and cancelling a task takes its lock.
+     */
     @Override
-    public void start(int workerId)  {
+    public CompletableFuture<Void> start(int workerId)  {
 
-        if (status != Status.NOT_STARTED) {
-            throw new IllegalStateException("Task already started");
+        synchronized (this) {
+            if (status != Status.NOT_STARTED) {
+                throw new IllegalStateException("Task already started");
+            }
+            status = Status.RUNNING;
+            this.workerId = workerId;
         }
-        status = Status.RUNNING;
-        this.workerId = workerId;
 
+        // a lookup in the shared cache may be slow, so the task continues when it completes instead of holding up the
+        // dispatcher that started the task
+        CompletableFuture<Void> result = new CompletableFuture();
+        CompletableFuture<Boolean> cached = cancelled ? CompletableFuture.completedFuture(false) : lookupCache();
+        cached.whenComplete((hit, ex) -> startChecked(hit, ex, result));
+        return result;
+    }
+
+    // Continue starting the task once the program has been looked up in the cache
+    private void startChecked(Boolean cached, Throwable lookupException, CompletableFuture<Void> result) {
         try {
-            if(BoogieUtil.isCached(boogieProgram)) {
+            if (lookupException != null) {
+                throw lookupException instanceof CompletionException && lookupException.getCause() instanceof IOException
+                        ? (IOException)lookupException.getCause() : new IOException(lookupException);
+            }
+            if (cached) {
+                completeCached();
+                result.complete(null);
+                return;
+            }
+            if (portfolioParent == null && completeAsKnownFailure()) {
+                result.complete(null);
+                return;
+            }
+            if (portfolioParent == null && Settings.portfolioSize > 1) {
+                // start with the configuration that last verified this obligation
+                String cachedConfig = BoogieUtil.getCachedConfig(getObligation());
+                if (cachedConfig != null) {
+                    synchronized (this) {
+                        config = cachedConfig;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            synchronized (this) {
+                finished = true;
                 status = Status.COMPLETE;
+                exception = new CheckException(ex);
+            }
+            done.complete(null);
+            result.complete(null);
+            return;
+        }
+
+        startAttempt(result);
+    }
+
+    // Identifies the obligation across runs. Tasks from the same definition share a location, so the message, which
+    // names the bisimulation part and goal, is part of it.
+    private String getObligation() {
+        return message + " at " + file.getPath() + "(" + line + ":" + pos + ")";
+    }
+
+    // Time limit in seconds for the current attempt, or 0 for no limit
+    private long getTimeLimit() {
+        return Settings.taskTimeout * (long)Math.pow(LIMIT_ESCALATION_FACTOR, attempt - 1);
+    }
+
+    // Solver resource limit for the current attempt, or 0 for no limit
+    private long getResourceLimit() {
+        return Settings.solverResourceLimit * (long)Math.pow(LIMIT_ESCALATION_FACTOR, attempt - 1);
+    }
+
+    // Memory limit in MB for the Boogie and solver processes, or 0 for no limit
+    private long getMemoryLimit() {
+        return Settings.solverMemoryLimit;
+    }
+
+    // CPU time limit in seconds for the Boogie and solver processes, or 0 for no limit
+    private long getCpuLimit() {
+        return Settings.solverCpuLimit;
+    }
+
+    private List<String> getBoogieOptions() {
+        List<String> options = new ArrayList();
+        // the seed of the configuration is replaced on retries, so Boogie never gets two seeds
+        long seed = 0;
+        for(String curOption : config.isEmpty() ? new String[0] : config.split(" ")) {
+            Matcher seedMatcher = RANDOM_SEED.matcher(curOption);
+            if (seedMatcher.matches()) {
+                seed = Long.parseLong(seedMatcher.group(1));
             } else {
-                boogieProcess = BoogieUtil.initVerify(workerId, boogieProgram);
-                procInputStream = boogieProcess.getInputStream();
+                options.add(curOption);
             }
+        }
+        if (getTimeLimit() > 0) {
+            options.add("/timeLimit:" + getTimeLimit());
+        }
+        if (getResourceLimit() > 0) {
+            options.add("/rlimit:" + getResourceLimit());
+        }
+        // Boogie only checks separate verification conditions in parallel, and the programs usually have a single
+        // procedure to check, so its verification condition is split into one part for each core
+        if (cores > 1) {
+            options.add("/vcsCores:" + cores);
+            options.add("/vcsMaxSplits:" + cores);
+        }
+        // retries use a different seed, since brittle proofs often succeed with another seed
+        if (seed != 0 || attempt > 1) {
+            options.add("/randomSeed:" + (seed + attempt - 1));
+        }
+        return options;
+    }
+
+    private void startAttempt(CompletableFuture<Void> result) {
+        Outcome outcome = launch(result);
+        if (outcome != null) {
+            finish(outcome, result);
+        }
+    }
+
+    // Start Boogie for the current attempt. Returns the outcome of the attempt if Boogie was not started.
+    private synchronized Outcome launch(CompletableFuture<Void> result) {
+
+        if (cancelled || solvedByVariant) {
+            return solvedByVariant ? Outcome.VERIFIED : Outcome.FAILED;
+        }
+
+        output = new BoogieOutput();
+        timedOut = false;
+        Process proc;
+        try {
+            deleteBoogieFile();
+            boogieFile = BoogieUtil.createBoogieFile(workerId);
+            proc = BoogieUtil.initVerify(boogieFile, boogieProgram, getBoogieOptions(), getMemoryLimit(), getCpuLimit());
         } catch (IOException ex) {
-            status = Status.COMPLETE;
             exception = new CheckException(ex);
+            return Outcome.FAILED;
+        }
+        boogieProcess = proc;
+        attemptStartTime = System.currentTimeMillis();
+        SolverEvent solverEvent = new SolverEvent(getTaskMessage(), tactic, boogieProgram.length(), workerId, attempt, String.join(" ", getBoogieOptions()));
+        if (Settings.metricsFile != null) {
+            samplePeakRss(proc);
+        }
+
+        // Boogie output is read on its own thread so the process never blocks on a full pipe
+        CompletableFuture<Void> outputRead = new CompletableFuture();
+        BoogieOutput attemptOutput = output;
+        Thread outputReader = new Thread(() -> readOutput(proc, attemptOutput, outputRead), "boogie-output-" + workerId);
+        outputReader.setDaemon(true);
+        outputReader.start();
+
+        // Boogie's time limit applies to each verification condition, so the whole process also gets a wall-clock limit
+        long timeLimit = getTimeLimit();
+        if (timeLimit > 0) {
+            CompletableFuture.delayedExecutor(timeLimit, TimeUnit.SECONDS).execute(() -> {
+                if (proc.isAlive()) {
+                    timedOut = true;
+                    destroy(proc);
+                }
+            });
         }
+
+        // the result is handled on another thread, so it is never handled while this task is locked
+        proc.onExit().thenCombine(outputRead, (p, v) -> checkResult(p)).handleAsync((outcome, ex) -> {
+            if (ex != null) {
+                // the task must still finish, or the run waits for it forever
+                checkFailed(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                outcome = Outcome.FAILED;
+            }
+            solverEvent.end(cancelled ? "CANCELLED" : outcome.name());
+            if ((outcome == Outcome.TIMED_OUT || outcome == Outcome.RESOURCE_EXHAUSTED) && attempt < getMaxAttempts() && !cancelled) {
+                String reason = outcome == Outcome.TIMED_OUT ? "timed out, retrying with larger limits" : "exceeded its memory or CPU limit, retrying with another seed";
+                System.out.println("[" + workerId + "] Task " + reason + ": " + getTaskMessage());
+                attempt++;
+                startAttempt(result);
+            } else {
+                finish(outcome, result);
+            }
+            return null;
+        });
+        return null;
+    }
+
+    // Complete the task after its last attempt. If the attempt did not verify the program, the task waits for its
+    // portfolio variants, since one of them may still verify it.
+    private void finish(Outcome outcome, CompletableFuture<Void> result) {
+        CompletableFuture<Void> variantsDone;
+        List<BoogieProofTask> cancelledVariants = new ArrayList();
+        synchronized (this) {
+            finished = true;
+            if (outcome == Outcome.VERIFIED || cancelled) {
+                cancelledVariants.addAll(variants);
+            }
+            variantsDone = CompletableFuture.allOf(variants.stream().map(v -> v.done).toArray(CompletableFuture[]::new));
+        }
+        for(BoogieProofTask curVariant : cancelledVariants) {
+            curVariant.cancel();
+        }
+
+        variantsDone.thenRun(() -> {
+            synchronized (this) {
+                if (solvedByVariant) {
+                    exception = null;
+                    failureOutput = null;
+                } else if (outcome == Outcome.TIMED_OUT) {
+                    timedOut();
+                } else if (outcome == Outcome.RESOURCE_EXHAUSTED) {
+                    resourceExhausted();
+                }
+                if (!solvedByVariant && !cancelled && (failureOutput != null || outcome == Outcome.TIMED_OUT || outcome == Outcome.RESOURCE_EXHAUSTED)) {
+                    recordFailure();
+                }
+                if (failureOutput != null) {
+                    System.err.println(failureOutput.getText());
+                }
+                if (exception == null) {
+                    deleteBoogieFile();
+                }
+                status = Status.COMPLETE;
+            }
+            done.complete(null);
+            result.complete(null);
+        });
     }
 
-    private void checkResult() {
-        String procOutStr = procOutBuf.toString();
-        if (BoogieUtil.boogieOutSuccess(procOutStr)) {
+    private void deleteBoogieFile() {
+        if (boogieFile != null) {
+            boogieFile.delete();
+            boogieFile = null;
+        }
+    }
+
+    int getMaxAttempts() {
+        // a variant is only useful while the task it belongs to is running
+        return portfolioParent == null ? Settings.maxAttempts : 1;
+    }
+
+    // Called when the last attempt times out
+    void timedOut() {
+        if (portfolioParent == null) {
+            exception = new CheckException(file, line, pos, failMessage + " Timed out after " + attempt + " attempt(s). Try analyzing " + boogieFile + " using boogie.");
+        }
+    }
+
+    // Called when the last attempt exceeds its memory or CPU limit
+    void resourceExhausted() {
+        if (portfolioParent == null) {
+            exception = new CheckException(file, line, pos, failMessage + " Exceeded the solver memory or CPU limit after " + attempt + " attempt(s). Try analyzing " + boogieFile + " using boogie.");
+        }
+    }
+
+    private static void destroy(Process proc) {
+        // the solver runs as a child of Boogie
+        proc.descendants().forEach(ProcessHandle::destroyForcibly);
+        proc.destroyForcibly();
+    }
+
+    @Override
+    public void cancel() {
+        List<BoogieProofTask> curVariants;
+        boolean notStarted;
+        synchronized (this) {
+            cancelled = true;
+            if (boogieProcess != null) {
+                destroy(boogieProcess);
+            }
+            curVariants = new ArrayList(variants);
+            notStarted = status == Status.NOT_STARTED;
+        }
+        for(BoogieProofTask curVariant : curVariants) {
+            curVariant.cancel();
+        }
+        if (notStarted) {
+            // a variant that is never started must not hold up the task it belongs to, and a later helper may take its place
+            if (portfolioParent != null) {
+                portfolioParent.variantDropped(this);
+            }
+            done.complete(null);
+        }
+    }
+
+    // Called by a variant that was cancelled before it started, for example because the queue had no room for it
+    private synchronized void variantDropped(BoogieProofTask variant) {
+        if (variants.remove(variant) && variant.cores > 1) {
+            multiCoreVariant = false;
+        }
+    }
+
+    @Override
+    public synchronized ProofTask createHelper(int cores) {
+        if (portfolioParent != null || status != Status.RUNNING || finished || cancelled || solvedByVariant) {
+            return null;
+        }
+
+        // the program is checked again with all idle cores, since this task may be the last one left
+        if (cores > 1 && !multiCoreVariant) {
+            multiCoreVariant = true;
+            BoogieProofTask variant = new BoogieProofTask(this, config, cores);
+            variants.add(variant);
+            return variant;
+        }
+
+        int portfolioVariants = multiCoreVariant ? variants.size() - 1 : variants.size();
+        if (portfolioVariants + 1 >= Settings.portfolioSize) {
+            return null;
+        }
+
+        List<String> configs = new ArrayList();
+        configs.add(config);
+        for(String curConfig : PORTFOLIO_CONFIGS) {
+            if (!configs.contains(curConfig)) {
+                configs.add(curConfig);
+            }
+        }
+        for(int seed = PORTFOLIO_CONFIGS.size(); configs.size() <= portfolioVariants + 1; seed++) {
+            configs.add("/randomSeed:" + seed);
+        }
+
+        BoogieProofTask variant = new BoogieProofTask(this, configs.get(portfolioVariants + 1), 1);
+        variants.add(variant);
+        return variant;
+    }
+
+    // Called by a portfolio variant that verified the program
+    private void variantVerified(BoogieProofTask variant) throws IOException {
+        List<BoogieProofTask> otherVariants = new ArrayList();
+        synchronized (this) {
+            if (solvedByVariant || status == Status.COMPLETE) {
+                return;
+            }
+            solvedByVariant = true;
+            BoogieUtil.cache(digest, variant.config, getObligation());
+            System.out.println("[" + variant.workerId + "] Verified with configuration \"" + variant.config + "\"" + (variant.cores > 1 ? " and " + variant.cores + " cores" : "") + ": " + getTaskMessage());
+            if (boogieProcess != null) {
+                destroy(boogieProcess);
+            }
+            for(BoogieProofTask curVariant : variants) {
+                if (curVariant != variant) {
+                    otherVariants.add(curVariant);
+                }
+            }
+        }
+        for(BoogieProofTask curVariant : otherVariants) {
+            curVariant.cancel();
+        }
+    }
+
+    // The peak memory of a process can only be read while it is running
+    private void samplePeakRss(Process proc) {
+        if (!proc.isAlive()) {
+            return;
+        }
+        peakRssKb = Math.max(peakRssKb, BoogieUtil.getPeakRssKb(proc));
+        CompletableFuture.delayedExecutor(RSS_SAMPLE_MILLIS, TimeUnit.MILLISECONDS).execute(() -> samplePeakRss(proc));
+    }
+
+    private Outcome checkResult(Process proc) {
+        solverMillis += System.currentTimeMillis() - attemptStartTime;
+        if (solvedByVariant) {
+            return Outcome.VERIFIED;
+        }
+        if (exception != null || cancelled) {
+            return Outcome.FAILED;
+        }
+
+        String summary = output.getSummary();
+        if (!timedOut && summary != null) {
+            recordTime(System.currentTimeMillis() - attemptStartTime);
+        }
+        if (summary != null && BoogieUtil.boogieOutSuccess(summary)) {
             try {
-                BoogieUtil.cache(boogieProgram);
+                verified();
             } catch (IOException ex) {
-                throw new RuntimeException(ex);
+                checkFailed(ex);
+                return Outcome.FAILED;
             }
+            return Outcome.VERIFIED;
+        } else if (timedOut || (summary != null && BoogieUtil.boogieOutTimeout(summary))) {
+            return Outcome.TIMED_OUT;
+        } else if ((getMemoryLimit() > 0 || getCpuLimit() > 0) && BoogieUtil.boogieResourceExhausted(output.getText(), proc.exitValue())) {
+            return Outcome.RESOURCE_EXHAUSTED;
         } else {
-            System.err.println(procOutStr);
-            exception = new CheckException(file, line, pos, failMessage + " Try analyzing " + BoogieUtil.getBoogieFile(workerId) + " using boogie.");
+            failed(output);
+            return Outcome.FAILED;
         }
     }
 
-    private void update() {
+    void recordTime(long millis) {
+        // the history describes the default configuration
+        if (portfolioParent == null) {
+            BoogieHistory.record(tactic, digest, boogieProgram.length(), millis);
+        }
+    }
 
-        if (procInputStream == null) {
-            return;
+    void verified() throws IOException {
+        if (portfolioParent != null) {
+            portfolioParent.variantVerified(this);
+        } else {
+            BoogieUtil.cache(digest, config, getObligation());
         }
+    }
 
+    void failed(BoogieOutput boogieOut) {
+        if (portfolioParent == null) {
+            failureOutput = boogieOut;
+            String hint = Settings.prune == Settings.PruneMode.AGGRESSIVE ? " The program was pruned aggressively, so it may lack an axiom that the proof needs; try --prune conservative." : "";
+            exception = new CheckException(file, line, pos, failMessage + " Try analyzing " + boogieFile + " using boogie." + hint);
+        }
+    }
+
+    // Called when the result of an attempt can't be handled, for example because it can't be recorded in the cache
+    private void checkFailed(Throwable ex) {
+        String reason = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+        exception = new CheckException(file, line, pos, failMessage + " Unable to check the program: " + reason);
+    }
+
+    // Record the failure of the task, so later runs can report it without checking the program again
+    private void recordFailure() {
+        if (portfolioParent != null || exception == null || digest == null) {
+            return;
+        }
+        String text = failureOutput != null ? failureOutput.getText() : output.getText();
         try {
-            while (procInputStream.available() > 0) {
-                int numRead = procInputStream.read(cbuf, 0, cbuf.length);
-                procOutBuf.append(new String(cbuf, 0, numRead));
-            }
-            if (!boogieProcess.isAlive()) {
-                status = Status.COMPLETE;
-                checkResult();
-            }
+            BoogieUtil.cacheFailure(digest, config, solverMillis, exception.getDescription(), text);
         } catch (IOException ex) {
+            System.err.println("Unable to record the failure of " + getTaskMessage() + ": " + ex.getMessage());
+        }
+    }
+
+    // With --trust-failures, report the failure of the program in an earlier run instead of checking it again. Returns
+    // false if the program is not known to fail.
+    boolean completeAsKnownFailure() {
+        if (!Settings.trustFailures || !knownFailure) {
+            return false;
+        }
+        BoogieFailureCache.Failure failure = BoogieUtil.getKnownFailure(digest);
+        if (failure == null) {
+            return false;
+        }
+        synchronized (this) {
+            cacheResult = ProofTaskMetrics.CACHE_FAILURE;
+            exception = new CheckException(file, line, pos, failure.message + " The program failed in an earlier run after "
+                    + failure.solverMillis + " ms in the solver; run without --trust-failures to check it again.");
+            finished = true;
             status = Status.COMPLETE;
-            exception = new CheckException(ex);
         }
+        System.err.println(failure.output);
+        done.complete(null);
+        return true;
+    }
+
+    // Identical programs are only checked once in a run
+    @Override
+    public Object getIdentity() {
+        return portfolioParent == null ? digest : null;
     }
 
+    @Override
+    public void completeAsDuplicate(ProofTask original) {
+        synchronized (this) {
+            cacheResult = ProofTaskMetrics.CACHE_DUPLICATE;
+            if (original.getException().isPresent()) {
+                exception = new CheckException(file, line, pos, failMessage + " The same program failed for " + original.getTaskMessage() + ".");
+            }
+            finished = true;
+            status = Status.COMPLETE;
+        }
+        done.complete(null);
+    }
+
+    // Mark the task as verified because its program was found in the cache, so it isn't recorded again
+    void completeCached() {
+        synchronized (this) {
+            cacheResult = ProofTaskMetrics.CACHE_HIT;
+            finished = true;
+            status = Status.COMPLETE;
+        }
+        done.complete(null);
+    }
+
+    // Mark the task as verified by a batch that included it
+    void completeVerified(BoogieProofTask batch) throws IOException {
+        synchronized (this) {
+            solverMillis = batch.solverMillis;
+            peakRssKb = batch.peakRssKb;
+            BoogieUtil.cache(digest, config, getObligation());
+            finished = true;
+            status = Status.COMPLETE;
+        }
+        done.complete(null);
+    }
+
+    // Look up the program in the cache. The future fails with an IOException if the cache can't be read.
+    CompletableFuture<Boolean> lookupCache() {
+        if (digest == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        CacheLookupEvent event = new CacheLookupEvent(getTaskMessage(), tactic, boogieProgram.length());
+        return BoogieUtil.lookup(digest).whenComplete((hit, ex) -> event.end(hit != null && hit));
+    }
+
+    String getHeader() {
+        return header;
+    }
+
+    String getGoal() {
+        return goal;
+    }
+
+    @Override
+    public Object getBatchKey() {
+        return header;
+    }
+
+    @Override
+    public ProofTask createBatch(List<BatchableProofTask> tasks) {
+        List<BoogieProofTask> boogieTasks = new ArrayList();
+        for(BatchableProofTask curTask : tasks) {
+            boogieTasks.add((BoogieProofTask)curTask);
+        }
+        return new BoogieBatchProofTask(boogieTasks);
+    }
+
+    private void readOutput(Process proc, BoogieOutput attemptOutput, CompletableFuture<Void> outputRead) {
+        try (InputStream procInputStream = proc.getInputStream()) {
+            attemptOutput.read(procInputStream);
+        } catch (IOException ex) {
+            if (!cancelled && !timedOut && !solvedByVariant) {
+                exception = new CheckException(ex);
+            }
+        }
+        outputRead.complete(null);
+    }
+
+    // The tasks that are expected to take longest are started first, so they don't delay the end of the run
     @Override
     public double getPriority() {
-        return priority;
+        if (knownFailure) {
+            return Double.MAX_VALUE;
+        }
+        return -expectedMillis;
+    }
+
+    String getTactic() {
+        return tactic;
     }
 
     @Override
-    public Status getStatus() {
+    public long getMemoryEstimate() {
+        // each core runs its own solver process
+        return cores * estimateMemory(boogieProgram.length());
+    }
 
-        update();
+    @Override
+    public int getCores() {
+        return cores;
+    }
+
+    static long estimateMemory(long programLength) {
+        return BASE_MEMORY_ESTIMATE + MEMORY_PER_PROGRAM_BYTE * programLength;
+    }
+
+    @Override
+    public synchronized void recordMetrics(ProofTaskMetrics metrics) {
+        metrics.setTactic(tactic);
+        metrics.setProgramBytes(boogieProgram.length());
+        metrics.setCacheResult(cacheResult);
+        metrics.setSolverMillis(solverMillis);
+        metrics.setPeakRssKb(peakRssKb);
+    }
 
+    @Override
+    public Status getStatus() {
         return status;
     }
 
@@ -115,6 +773,16 @@ public class BoogieProofTask implements ProofTask {
 
     @Override
     public String getTaskMessage() {
-        return (message + " at " + file.getName() +"(" + line + ":" + pos + ")");
+        String result = message + " at " + file.getName() +"(" + line + ":" + pos + ")";
+        if (attempt > 1) {
+            result += " [attempt " + attempt + "]";
+        }
+        if (portfolioParent != null && (cores == 1 || !config.isEmpty())) {
+            result += " [configuration \"" + config + "\"]";
+        }
+        if (cores > 1) {
+            result += " [" + cores + " cores]";
+        }
+        return result;
     }
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ Removes the declarations that the proof obligations of a Boogie program don't depend on. The obligations are the
+ procedures that have bodies, which Boogie checks, and the program keeps the declarations that they transitively refer
+ to. An axiom is kept when it refers to a function, constant or variable that is kept, or when it doesn't refer to any,
+ and the declarations that a kept axiom refers to are kept as well. So the program only loses axioms that share no more
+ than types with the obligations.
+ Aggressive pruning only starts from the procedures that are not inlined, so procedures that the goal doesn't call are
+ removed. It also only keeps an axiom when one of its rarest symbols is kept, where the rarest symbols are those that
+ appear in at most TRIGGER_TOLERANCE times as many axioms as the symbol of the axiom that appears in the fewest. Axioms
+ that are only related to the goal by symbols that appear in many axioms, like the conversions between Quivela
+ values, are removed. This may remove an axiom that a proof needs, which makes the proof fail.
+ Removing declarations only removes assumptions and unrelated obligations, so a program that verifies after pruning
+ also verifies without it. A batch only combines tasks whose pruned programs have the same declarations apart from their
+ goals, so when the batch verifies, the pruned program of each of its tasks verifies as well. Each task is recorded in
+ the cache under the digest of its own pruned program.
+ A removed declaration is replaced by blank lines, so the lines of the program keep their numbers. The program is also
+ the key of the obligation in the cache, so a change to a declaration that an obligation doesn't depend on doesn't
+ change its key.
+ */
+class BoogiePruner {
+
+    private static final double TRIGGER_TOLERANCE = 1.5;
+
+    private static final Pattern ATTRIBUTE = Pattern.compile("\\{:[^}]*\\}");
+    private static final Pattern TOKEN = Pattern.compile(BoogieCanonicalizer.IDENTIFIER.pattern() + "|::|[()]");
+    private static final Pattern TYPE_PARAMS = Pattern.compile("<[^>]*>");
+
+    private static class Decl {
+        final String text;
+        String kind = null;
+        final List<String> names = new ArrayList();
+        final Set<String> refs = new HashSet();
+        boolean hasBody = false;
+        boolean inlined = false;
+        boolean included = false;
+
+        Decl(String text) {
+            this.text = text;
+        }
+    }
+
+    static String prune(String program, boolean aggressive) {
+        List<Decl> decls = new ArrayList();
+        for(String curText : BoogieCanonicalizer.splitDecls(program)) {
+            decls.add(parse(curText));
+        }
+
+        Map<String, List<Decl>> declsByName = new HashMap();
+        Set<String> typeNames = new HashSet();
+        for(Decl curDecl : decls) {
+            for(String curName : curDecl.names) {
+                declsByName.computeIfAbsent(curName, k -> new ArrayList()).add(curDecl);
+                if ("type".equals(curDecl.kind)) {
+                    typeNames.add(curName);
+                }
+            }
+        }
+
+        // the number of axioms that refer to each function, constant and variable
+        Map<String, Integer> axiomCounts = new HashMap();
+        for(Decl curDecl : decls) {
+            if ("axiom".equals(curDecl.kind)) {
+                for(String curSymbol : getSymbols(curDecl, declsByName, typeNames)) {
+                    axiomCounts.merge(curSymbol, 1, Integer::sum);
+                }
+            }
+        }
+
+        // the axioms that are kept when each function, constant and variable is kept
+        Map<String, List<Decl>> axiomsByName = new HashMap();
+        Deque<Decl> pending = new ArrayDeque();
+        for(Decl curDecl : decls) {
+            if (!"axiom".equals(curDecl.kind)) {
+                continue;
+            }
+            List<String> symbols = getSymbols(curDecl, declsByName, typeNames);
+            if (symbols.isEmpty()) {
+                include(curDecl, pending);
+            }
+            int minCount = Integer.MAX_VALUE;
+            for(String curSymbol : symbols) {
+                minCount = Math.min(minCount, axiomCounts.get(curSymbol));
+            }
+            for(String curSymbol : symbols) {
+                if (!aggressive || axiomCounts.get(curSymbol) <= TRIGGER_TOLERANCE * minCount) {
+                    axiomsByName.computeIfAbsent(curSymbol, k -> new ArrayList()).add(curDecl);
+                }
+            }
+        }
+
+        boolean aggressiveRoots = false;
+        if (aggressive) {
+            for(Decl curDecl : decls) {
+                if (isObligation(curDecl) && !curDecl.inlined) {
+                    include(curDecl, pending);
+                    aggressiveRoots = true;
+                }
+            }
+        }
+        for(Decl curDecl : decls) {
+            // when all procedures are inlined, Boogie checks all of them
+            if (curDecl.kind == null || (!aggressiveRoots && isObligation(curDecl))) {
+                include(curDecl, pending);
+            }
+        }
+
+        Set<String> reached = new HashSet();
+        while (!pending.isEmpty()) {
+            Decl curDecl = pending.pop();
+            for(String curRef : curDecl.refs) {
+                if (!reached.add(curRef)) {
+                    continue;
+                }
+                for(Decl curDep : declsByName.getOrDefault(curRef, Collections.emptyList())) {
+                    include(curDep, pending);
+                }
+                for(Decl curAxiom : axiomsByName.getOrDefault(curRef, Collections.emptyList())) {
+                    include(curAxiom, pending);
+                }
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        for(int i = 0; i < decls.size(); i++) {
+            Decl curDecl = decls.get(i);
+            if (i > 0) {
+                result.append("\n");
+            }
+            if (curDecl.included) {
+                result.append(curDecl.text);
+            } else {
+                for(char c : curDecl.text.toCharArray()) {
+                    if (c == '\n') {
+                        result.append(c);
+                    }
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    // The functions, constants and variables that a declaration refers to
+    private static List<String> getSymbols(Decl decl, Map<String, List<Decl>> declsByName, Set<String> typeNames) {
+        List<String> result = new ArrayList();
+        for(String curRef : decl.refs) {
+            if (declsByName.containsKey(curRef) && !typeNames.contains(curRef)) {
+                result.add(curRef);
+            }
+        }
+        return result;
+    }
+
+    private static void include(Decl decl, Deque<Decl> pending) {
+        if (!decl.included) {
+            decl.included = true;
+            pending.push(decl);
+        }
+    }
+
+    // Boogie checks the procedures that have bodies
+    private static boolean isObligation(Decl decl) {
+        return ("procedure".equals(decl.kind) || "implementation".equals(decl.kind)) && decl.hasBody;
+    }
+
+    // Find the kind of a declaration, the names it declares and the identifiers it refers to
+    private static Decl parse(String text) {
+        Decl result = new Decl(text);
+        String normalized = BoogieCanonicalizer.normalize(text);
+        String code = ATTRIBUTE.matcher(normalized).replaceAll("");
+        if (code.isEmpty()) {
+            return result;
+        }
+        List<String> identifiers = new ArrayList();
+        Matcher matcher = BoogieCanonicalizer.IDENTIFIER.matcher(code);
+        while (matcher.find()) {
+            identifiers.add(matcher.group());
+        }
+        if (identifiers.isEmpty()) {
+            return result;
+        }
+
+        String kind = identifiers.get(0);
+        switch (kind) {
+            case "type":
+            case "function":
+            case "procedure":
+                // the declared name is the first identifier after the keyword and its modifiers
+                for(String curIdentifier : identifiers.subList(1, identifiers.size())) {
+                    if (!curIdentifier.equals("finite")) {
+                        result.names.add(curIdentifier);
+                        break;
+                    }
+                }
+                break;
+            case "const":
+            case "var":
+                // the declared names are the names before the type
+                int typeStart = code.indexOf(':');
+                if (typeStart < 0) {
+                    return result;
+                }
+                for(String curName : code.substring(kind.length(), typeStart).split(",")) {
+                    curName = curName.trim();
+                    if (curName.startsWith("unique ")) {
+                        curName = curName.substring("unique ".length()).trim();
+                    }
+                    result.names.add(curName);
+                }
+                break;
+            case "axiom":
+            case "implementation":
+                break;
+            default:
+                // the text before the first declaration
+                return result;
+        }
+        result.kind = kind;
+        result.hasBody = code.contains("{");
+        result.inlined = normalized.contains("{:inline");
+        addRefs(code, result.refs);
+        result.refs.removeAll(result.names);
+        return result;
+    }
+
+    // Add the identifiers that a declaration refers to, without the variables bound by quantifiers
+    private static void addRefs(String code, Set<String> refs) {
+        // the variables bound in each enclosing pair of parentheses
+        Deque<Set<String>> scopes = new ArrayDeque();
+        scopes.push(Collections.emptySet());
+        int skipTo = 0;
+        Matcher matcher = TOKEN.matcher(code);
+        while (matcher.find()) {
+            if (matcher.start() < skipTo) {
+                continue;
+            }
+            String token = matcher.group();
+            if (token.equals("(")) {
+                scopes.push(scopes.peek());
+            } else if (token.equals(")")) {
+                if (scopes.size() > 1) {
+                    scopes.pop();
+                }
+            } else if (token.equals("forall") || token.equals("exists") || token.equals("lambda")) {
+                int bindersEnd = code.indexOf("::", matcher.end());
+                if (bindersEnd < 0) {
+                    continue;
+                }
+                // the quantifier binds its variables until the end of the parentheses around it
+                Set<String> bound = new HashSet(scopes.pop());
+                for(String curBinder : TYPE_PARAMS.matcher(code.substring(matcher.end(), bindersEnd)).replaceAll("").split(",")) {
+                    int typeStart = curBinder.indexOf(':');
+                    if (typeStart < 0) {
+                        continue;
+                    }
+                    bound.add(curBinder.substring(0, typeStart).trim());
+                    Matcher typeMatcher = BoogieCanonicalizer.IDENTIFIER.matcher(curBinder.substring(typeStart + 1));
+                    while (typeMatcher.find()) {
+                        refs.add(typeMatcher.group());
+                    }
+                }
+                scopes.push(bound);
+                skipTo = bindersEnd + 2;
+            } else if (!token.equals("::") && !scopes.peek().contains(token)) {
+                refs.add(token);
+            }
+        }
+    }
+}
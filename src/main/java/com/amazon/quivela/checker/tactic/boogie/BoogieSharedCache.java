@@ -0,0 +1,149 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ A local cache backed by a cache that is shared with other checkers. Lookups that miss the local cache are tried in the
+ shared cache, and verified programs are recorded in both. Programs found in the shared cache are recorded in the local
+ cache, so they are found locally in later runs. The shared cache may be slow, so its lookups run on their own
+ threads, and they are started when a task is created so they are usually complete by the time the task starts.
+ The shared cache is only an optimization, so when it fails the checker reports the error once and continues with only
+ the local cache.
+ */
+class BoogieSharedCache implements BoogieCache {
+
+    private static final int LOOKUP_THREADS = 8;
+
+    private final BoogieCache local;
+    private final BoogieCache shared;
+    private final ExecutorService lookupExecutor = Executors.newFixedThreadPool(LOOKUP_THREADS, r -> {
+        Thread thread = new Thread(r, "shared-cache-lookup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // lookups in the shared cache that were started before they were needed
+    private final Map<String, CompletableFuture<Boolean>> prefetched = new ConcurrentHashMap();
+    // the programs that are known to be in the shared cache
+    private final Set<String> sharedDigests = new HashSet();
+    private volatile boolean sharedFailed = false;
+
+    BoogieSharedCache(BoogieCache local, BoogieCache shared) {
+        this.local = local;
+        this.shared = shared;
+    }
+
+    @Override
+    public boolean contains(String digest) throws IOException {
+        return local.contains(digest) || containsShared(digest);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> lookup(String digest) {
+        try {
+            if (local.contains(digest)) {
+                prefetched.remove(digest);
+                return CompletableFuture.completedFuture(true);
+            }
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        CompletableFuture<Boolean> result = prefetched.remove(digest);
+        if (result == null) {
+            result = lookupShared(digest);
+        }
+        return result;
+    }
+
+    @Override
+    public void prefetch(String digest) {
+        if (!sharedFailed) {
+            prefetched.computeIfAbsent(digest, this::lookupShared);
+        }
+    }
+
+    private CompletableFuture<Boolean> lookupShared(String digest) {
+        if (sharedFailed) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return CompletableFuture.supplyAsync(() -> containsShared(digest), lookupExecutor);
+    }
+
+    private boolean containsShared(String digest) {
+        if (sharedFailed) {
+            return false;
+        }
+        try {
+            if (!shared.contains(digest)) {
+                return false;
+            }
+        } catch (IOException ex) {
+            sharedFailed(ex);
+            return false;
+        }
+        addSharedDigest(digest);
+        try {
+            // the shared cache doesn't say which configuration verified the program
+            local.add(digest, null, null);
+        } catch (IOException ex) {
+            // the program is looked up in the shared cache again in the next run
+        }
+        return true;
+    }
+
+    @Override
+    public void add(String digest, String config, String obligation) throws IOException {
+        local.add(digest, config, obligation);
+        if (sharedFailed || hasSharedDigest(digest)) {
+            return;
+        }
+        try {
+            shared.add(digest, config, obligation);
+            addSharedDigest(digest);
+        } catch (IOException ex) {
+            sharedFailed(ex);
+        }
+    }
+
+    @Override
+    public String getConfig(String obligation) {
+        return local.getConfig(obligation);
+    }
+
+    @Override
+    public void sync() {
+        local.sync();
+        if (!sharedFailed) {
+            shared.sync();
+        }
+    }
+
+    private synchronized void addSharedDigest(String digest) {
+        sharedDigests.add(digest);
+    }
+
+    private synchronized boolean hasSharedDigest(String digest) {
+        return sharedDigests.contains(digest);
+    }
+
+    // The shared cache is not used again after it fails, so an unreachable server only delays the first lookups
+    private synchronized void sharedFailed(IOException ex) {
+        if (!sharedFailed) {
+            sharedFailed = true;
+            prefetched.clear();
+            String reason = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+            System.err.println("Unable to use shared cache, continuing with the local cache: " + reason);
+        }
+    }
+}
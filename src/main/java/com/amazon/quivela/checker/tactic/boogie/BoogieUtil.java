@@ -13,8 +13,11 @@ import com.amazon.quivela.checker.Type;
 import com.amazon.quivela.checker.Util;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -594,35 +597,32 @@ public class BoogieUtil {
         }
     }
 
-    private static class BoogieCache {
-
-        Set<String> digests = new HashSet();
-
-        public boolean contains(String boogieString) {
-            return digests.contains(digest(boogieString));
-        }
-
-        private String digest(String boogieString) {
-            try {
-                MessageDigest md = MessageDigest.getInstance("SHA-384");
-                byte[] digestBytes = md.digest(boogieString.getBytes());
-                return Base64.getEncoder().encodeToString(digestBytes);
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
+    // The digest of the canonical form of the program, so programs that differ only in formatting, declaration order
+    // or the numbering of fresh names have the same digest. Proof tasks compute it once and use it as their key.
+    public static String digest(String boogieString) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-384");
+            boolean first = true;
+            for(String curDecl : BoogieCanonicalizer.canonicalDecls(boogieString)) {
+                if (!first) {
+                    md.update((byte)'\n');
+                }
+                md.update(curDecl.getBytes(StandardCharsets.UTF_8));
+                first = false;
             }
+            return Base64.getEncoder().encodeToString(md.digest());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
         }
+    }
 
-        public void addDigest(String digest) {
-            digests.add(digest);
-        }
-
-        public void add(String boogieString) {
-            addDigest(digest(boogieString));
-        }
-
-        public Stream<String> getDigests() {
-            return digests.stream();
+    // The digest in hexadecimal, which can be used in file names and URLs
+    public static String toHex(String digest) {
+        StringBuilder result = new StringBuilder();
+        for(byte b : Base64.getDecoder().decode(digest)) {
+            result.append(String.format("%02x", b));
         }
+        return result.toString();
     }
 
     private static BoogieCache boogieCache = null;
@@ -631,54 +631,161 @@ public class BoogieUtil {
         return "quivela.cache.boogie";
     }
 
-    private static BoogieCache loadBoogieCache() throws IOException {
-        BoogieCache result = new BoogieCache();
+    private static synchronized BoogieCache getBoogieCache() throws IOException {
+        if (boogieCache == null) {
+            BoogieFileCache fileCache = new BoogieFileCache(getBoogieCacheFilename());
+            fileCache.load();
+            BoogieCache cache = fileCache;
+            if (Settings.sharedCache != null) {
+                BoogieCache sharedCache;
+                if (Settings.sharedCache.startsWith("http://") || Settings.sharedCache.startsWith("https://")) {
+                    sharedCache = new BoogieHttpCache(Settings.sharedCache);
+                } else {
+                    sharedCache = new BoogieDirectoryCache(Settings.sharedCache);
+                }
+                cache = new BoogieSharedCache(fileCache, sharedCache);
+            }
+            // appends that have not been synced yet are written when the checker exits
+            Runtime.getRuntime().addShutdownHook(new Thread(cache::sync));
+            boogieCache = cache;
+        }
+
+        return boogieCache;
+    }
+
+    // Whether the program with the given digest verified before. The future fails with an IOException if the cache
+    // can't be read.
+    public static CompletableFuture<Boolean> lookup(String digest) {
+        try {
+            return getBoogieCache().lookup(digest);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
 
+    // Start looking up the program with the given digest in the shared cache, before the lookup is needed
+    public static void prefetch(String digest) {
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(getBoogieCacheFilename()));
-            reader.lines().forEach(result::addDigest);
-            reader.close();
-        } catch (FileNotFoundException ex) {
-            // start with empty cache
+            getBoogieCache().prefetch(digest);
+        } catch (IOException ex) {
+            // reported when the program is looked up
         }
+    }
 
-        return result;
+    // Record that the program with the given digest verified using the given solver configuration, for the given
+    // obligation
+    public static void cache(String digest, String config, String obligation) throws IOException {
+        getBoogieCache().add(digest, config, obligation);
+        failureCache.remove(digest);
     }
 
-    private static BoogieCache getBoogieCache() throws IOException {
-        if (boogieCache == null) {
-            boogieCache = loadBoogieCache();
-        }
+    private static final BoogieFailureCache failureCache = new BoogieFailureCache("quivela.failures.boogie");
 
-        return boogieCache;
+    // Whether the program with the given digest failed in an earlier run and has not verified since
+    public static boolean isKnownFailure(String digest) {
+        return failureCache.contains(digest);
     }
 
-    public static boolean isCached(String boogieString) throws IOException {
-        return getBoogieCache().contains(boogieString);
+    static BoogieFailureCache.Failure getKnownFailure(String digest) {
+        return failureCache.get(digest);
     }
 
-    public static void cache(String boogieProgram) throws IOException {
-        BoogieCache cache = getBoogieCache();
-        cache.add(boogieProgram);
-        writeBoogieCache(cache);
+    // Record that the program with the given digest failed using the given solver configuration
+    public static void cacheFailure(String digest, String config, long solverMillis, String message, String output) throws IOException {
+        failureCache.add(digest, new BoogieFailureCache.Failure(config, solverMillis, message, output));
     }
 
-    private static void writeBoogieCache(BoogieCache cache) throws IOException {
-        PrintWriter fileOut = new PrintWriter(new FileWriter(getBoogieCacheFilename()));
-        cache.getDigests().forEach(fileOut::println);
-        fileOut.close();
+    // The solver configuration that last verified the given obligation, or null if there is none
+    public static String getCachedConfig(String obligation) throws IOException {
+        return getBoogieCache().getConfig(obligation);
     }
 
-    public static Process initVerify(int taskId, String boogieIn) throws IOException {
+    // Signals that kill a process that exceeds its CPU time limit, or that is killed because it is out of memory
+    private static final int SIGKILL = 9;
+    private static final int SIGXCPU = 24;
 
-        String boogieFilename = getBoogieFile(taskId);
-        PrintWriter fileOut = new PrintWriter(new FileWriter(boogieFilename));
+    // whether systemd-run can start a process in its own cgroup, or null if that has not been checked yet
+    private static Boolean memoryScopeAvailable = null;
+
+    /*
+     A memory limit on the address space of a process doesn't work well for Boogie, since the .NET runtime reserves much
+     more address space than it uses. So the memory limit is the limit of a cgroup that holds Boogie and its solvers,
+     which systemd-run creates. Where systemd-run is not available, the limit falls back to an address space limit.
+     */
+    private static synchronized boolean memoryScopeAvailable() {
+        if (memoryScopeAvailable == null) {
+            memoryScopeAvailable = false;
+            try {
+                List<String> command = memoryScopeCommand(64);
+                command.add("true");
+                Process proc = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+                memoryScopeAvailable = proc.waitFor(10, TimeUnit.SECONDS) && proc.exitValue() == 0;
+                if (proc.isAlive()) {
+                    proc.destroyForcibly();
+                }
+            } catch (IOException | InterruptedException ex) {
+                // not available
+            }
+            if (!memoryScopeAvailable) {
+                System.err.println("systemd-run is not available, so the solver memory limit is applied to the address space of each process. "
+                        + "Boogie may fail to start if the limit is less than the address space that the .NET runtime reserves.");
+            }
+        }
+        return memoryScopeAvailable;
+    }
+
+    private static List<String> memoryScopeCommand(long memoryLimitMb) {
+        List<String> command = new ArrayList();
+        command.add("systemd-run");
+        if (!"root".equals(System.getProperty("user.name"))) {
+            command.add("--user");
+        }
+        command.add("--scope");
+        command.add("--quiet");
+        command.add("-p");
+        command.add("MemoryMax=" + memoryLimitMb + "M");
+        command.add("-p");
+        command.add("MemorySwapMax=0");
+        command.add("--");
+        return command;
+    }
+
+    /*
+     Start Boogie on the program. If a memory limit is given, Boogie and the solver processes that it starts share a
+     cgroup with that limit, or each is limited to that address space if there is no systemd. If a CPU time limit is
+     given, Boogie is started by prlimit, and the limit applies to Boogie and to each solver process that it starts.
+     */
+    public static Process initVerify(File boogieFile, String boogieIn, List<String> boogieOptions, long memoryLimitMb, long cpuLimitSeconds) throws IOException {
+
+        String boogieFilename = boogieFile.getPath();
+        PrintWriter fileOut = new PrintWriter(new FileWriter(boogieFile));
         fileOut.println(boogieIn);
         fileOut.close();
 
+        List<String> command = new ArrayList();
+        long addressSpaceLimitMb = memoryLimitMb;
+        if (memoryLimitMb > 0 && memoryScopeAvailable()) {
+            command.addAll(memoryScopeCommand(memoryLimitMb));
+            addressSpaceLimitMb = 0;
+        }
+        if (addressSpaceLimitMb > 0 || cpuLimitSeconds > 0) {
+            command.add("prlimit");
+            if (addressSpaceLimitMb > 0) {
+                command.add("--as=" + addressSpaceLimitMb * 1024 * 1024);
+            }
+            if (cpuLimitSeconds > 0) {
+                command.add("--cpu=" + cpuLimitSeconds);
+            }
+            command.add("--");
+        }
+        command.add(getBoogiePath());
+        // command.add("/proverOpt:O:smt.qi.eager-threshold=20");
+        command.addAll(boogieOptions);
+        command.add(boogieFilename);
+
+        // Boogie's error output is merged into its standard output, so one reader drains both and neither pipe can fill up
         ProcessBuilder procBuilder = new ProcessBuilder();
-        String boogiePath = getBoogiePath();
-        return procBuilder.command(boogiePath, /* "/proverOpt:O:smt.qi.eager-threshold=20", */ boogieFilename).start();
+        return procBuilder.command(command).redirectErrorStream(true).start();
     }
 
     public static boolean boogieOutSuccess(String boogieOut) {
@@ -700,6 +807,28 @@ public class BoogieUtil {
         return false;
     }
 
+    // Boogie finished checking the program, whether or not it verified
+    public static boolean boogieOutFinished(String boogieOut) {
+        return boogieOut.contains("Boogie program verifier finished with ");
+    }
+
+    // Boogie reports time outs and exhausted resource limits separately from errors. A run that also reports errors
+    // is a failure, since larger limits won't fix a counterexample.
+    public static boolean boogieOutTimeout(String boogieOut) {
+        Pattern pattern = Pattern.compile("Boogie program verifier finished with \\d+ verified, 0 errors, [1-9]\\d* (time outs?|out of resource)");
+        return pattern.matcher(boogieOut).find();
+    }
+
+    // Boogie or the solver ran out of memory or CPU time, as reported in the output or by the exit value of Boogie
+    public static boolean boogieResourceExhausted(String boogieOut, int exitValue) {
+        // Java reports a process that was killed by a signal with an exit value of 128 plus the signal
+        if (exitValue == 128 + SIGKILL || exitValue == 128 + SIGXCPU) {
+            return true;
+        }
+        Pattern pattern = Pattern.compile("out of memory|OutOfMemory|memory exhausted|Insufficient memory", Pattern.CASE_INSENSITIVE);
+        return pattern.matcher(boogieOut).find();
+    }
+
     /*
     public static boolean verify(int taskId, String boogieIn) throws IOException {
 
@@ -756,12 +885,54 @@ public class BoogieUtil {
         saveCheckpoint(out, name, value, null);
     }
 
+    // Peak resident set size in KB of a process and its descendants, or 0 if it is not known. The peaks of the processes
+    // are added up, so this overestimates when they peak at different times. Only Linux is supported.
+    public static long getPeakRssKb(Process proc) {
+        long result = readPeakRssKb(proc.pid());
+        for(ProcessHandle curHandle : (Iterable<ProcessHandle>)proc.descendants()::iterator) {
+            result += readPeakRssKb(curHandle.pid());
+        }
+        return result;
+    }
+
+    private static long readPeakRssKb(long pid) {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/" + pid + "/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).trim().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            // the process has exited, or /proc is not available
+        }
+        return 0;
+    }
+
     private static String getBoogiePath(){
         return Settings.boogiePath;
     }
 
-    public static String getBoogieFile(int index) {
-        return "boogie" + index + ".bpl";
+    private static File getScratchDir() throws IOException {
+        if (Settings.scratchDir != null) {
+            File scratchDir = new File(Settings.scratchDir);
+            if (!scratchDir.isDirectory() && !scratchDir.mkdirs()) {
+                throw new IOException("Unable to create scratch directory " + scratchDir);
+            }
+            return scratchDir;
+        }
+
+        // prefer a memory-backed file system, so writing programs doesn't wait on the disk
+        File shm = new File("/dev/shm");
+        if (shm.isDirectory() && shm.canWrite()) {
+            return shm;
+        }
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    // Create a file for a Boogie program with a name that is unique across concurrent runs
+    public static File createBoogieFile(int taskId) throws IOException {
+        return File.createTempFile("quivela-boogie" + taskId + "-", ".bpl", getScratchDir());
     }
 
     public static BoogieType toBoogieType(com.amazon.quivela.checker.Type type, com.amazon.quivela.checker.Type defaultType) {
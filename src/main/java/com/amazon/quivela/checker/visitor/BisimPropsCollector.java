@@ -6,7 +6,7 @@
 package com.amazon.quivela.checker.visitor;
 
 import com.amazon.quivela.parser.analysis.DepthFirstAdapter;
-import com.amazon.quivela.parser.node.ABisimProp;
+import com.amazon.quivela.parser.node.*;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,10 +14,48 @@ import java.util.List;
 public class BisimPropsCollector extends DepthFirstAdapter {
 
     private List<ABisimProp> props = new ArrayList();
+    private final boolean splitConjuncts;
+
+    public BisimPropsCollector() {
+        this(false);
+    }
+
+    // If conjuncts are split, each top-level conjunct of a prop is collected as a separate prop with the same scopes
+    public BisimPropsCollector(boolean splitConjuncts) {
+        this.splitConjuncts = splitConjuncts;
+    }
 
     @Override
     public void outABisimProp(ABisimProp node) {
-        props.add(node);
+        List<PLogicProp> conjuncts = splitConjuncts ? getConjuncts(node.getProp()) : null;
+        if (conjuncts == null || conjuncts.size() <= 1) {
+            props.add(node);
+            return;
+        }
+
+        for(PLogicProp curConjunct : conjuncts) {
+            AProp prop = new AProp(new ALogicForallExistsProp(curConjunct));
+            PBisimPropScopeClause scopeClause = node.getBisimPropScopeClause() == null ? null : (PBisimPropScopeClause)node.getBisimPropScopeClause().clone();
+            props.add(new ABisimProp(prop, scopeClause));
+        }
+    }
+
+    // Copies of the top-level conjuncts of a prop, or null if the prop is quantified
+    private static List<PLogicProp> getConjuncts(PProp prop) {
+        PForallExistsProp forallExistsProp = ((AProp)prop).getForallExistsProp();
+        if (!(forallExistsProp instanceof ALogicForallExistsProp)) {
+            return null;
+        }
+
+        List<PLogicProp> conjuncts = new ArrayList();
+        PLogicProp logicProp = ((ALogicForallExistsProp)forallExistsProp).getLogicProp();
+        while (logicProp instanceof ALogicOpLogicProp && ((ALogicOpLogicProp)logicProp).getPropLogicOp().getText().trim().equals("&&")) {
+            ALogicOpLogicProp andProp = (ALogicOpLogicProp)logicProp;
+            conjuncts.add(new ABoolLogicProp((PBoolProp)andProp.getLeft().clone()));
+            logicProp = andProp.getRight();
+        }
+        conjuncts.add((PLogicProp)logicProp.clone());
+        return conjuncts;
     }
 
     public List<ABisimProp> getProps() {
@@ -0,0 +1,134 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.quivela.checker.tactic.boogie;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ Checks the HTTP shared cache and the local cache that is backed by it against a stand-in server on the loopback
+ interface, so no real cache server is needed. Run it after mvn test-compile with
+   java -cp target/classes:target/test-classes com.amazon.quivela.checker.tactic.boogie.BoogieSharedCacheCheck
+ It exits with a nonzero status if a check fails.
+ */
+public class BoogieSharedCacheCheck {
+
+    // A server that stores the body of each PUT under its path, and answers 500 to everything while it is failing
+    private static class StandInServer {
+        private final HttpServer server;
+        private final Map<String, String> files = new ConcurrentHashMap();
+        private volatile boolean failing = false;
+
+        StandInServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/cache";
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (failing) {
+                exchange.sendResponseHeaders(500, -1);
+            } else if (exchange.getRequestMethod().equals("PUT")) {
+                files.put(path, new String(body, StandardCharsets.UTF_8));
+                exchange.sendResponseHeaders(201, -1);
+            } else if (files.containsKey(path)) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+
+    private static int failed = 0;
+
+    private static void check(boolean condition, String description) {
+        System.out.println((condition ? "ok:     " : "FAILED: ") + description);
+        if (!condition) {
+            failed++;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("quivela-cache-check");
+        String verified = BoogieUtil.digest("procedure left() { }");
+        String other = BoogieUtil.digest("procedure right() { }");
+        StandInServer server = new StandInServer();
+        try {
+            BoogieHttpCache http = new BoogieHttpCache(server.getUrl());
+            check(!http.contains(verified), "a program that was not recorded is not in the HTTP cache");
+            http.add(verified, "/randomSeed:1", "Checking auto at a.qvl(1:1)");
+            check(http.contains(verified), "a recorded program is in the HTTP cache");
+            check("/randomSeed:1\tChecking auto at a.qvl(1:1)\n".equals(server.files.get("/cache/" + BoogieUtil.toHex(verified))),
+                    "the configuration and obligation are the body of the PUT");
+
+            server.failing = true;
+            boolean thrown = false;
+            try {
+                http.contains(verified);
+            } catch (IOException ex) {
+                thrown = true;
+            }
+            check(thrown, "a server error is reported as an IOException");
+            server.failing = false;
+
+            // a program that another checker recorded is found in the shared cache and written to the local cache
+            String localFile = dir.resolve("quivela.cache.boogie").toString();
+            BoogieFileCache local = new BoogieFileCache(localFile);
+            local.load();
+            BoogieSharedCache shared = new BoogieSharedCache(local, http);
+            check(!local.contains(verified), "the local cache starts empty");
+            check(shared.lookup(verified).join(), "a program in the shared cache is found");
+            check(local.contains(verified), "a shared hit is written to the local cache");
+            check(new BoogieFileCache(localFile).contains(verified), "a shared hit is written to the local cache file");
+            check(!shared.lookup(other).join(), "a program in neither cache is not found");
+
+            // once the server is gone, the shared hit is still found locally, and the failure doesn't fail lookups
+            server.stop();
+            server = null;
+            BoogieSharedCache afterStop = new BoogieSharedCache(new BoogieFileCache(localFile), http);
+            check(afterStop.lookup(verified).join(), "a shared hit is found in the local cache in a later run");
+            check(!afterStop.lookup(other).join(), "a lookup in an unreachable shared cache misses instead of failing");
+            afterStop.add(other, "", "Checking auto at a.qvl(2:1)");
+            check(new BoogieFileCache(localFile).contains(other), "programs are still recorded locally when the shared cache fails");
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+            try (var files = Files.list(dir)) {
+                for(Path curFile : (Iterable<Path>)files::iterator) {
+                    Files.delete(curFile);
+                }
+            }
+            Files.delete(dir);
+        }
+
+        if (failed > 0) {
+            System.out.println(failed + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+        System.exit(0);
+    }
+}